@@ -0,0 +1,91 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Image analysed by the benchmarks: the jimage of the running JDK read by the
+ * mapped reader or through jrt-fs, or a synthetic image whose size is given by
+ * the remaining parameters.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkImage {
+
+	static final String JDK_MAPPED = "jdk";
+	static final String JDK_JRT = "jrt";
+	static final String SYNTHETIC = "synthetic";
+
+	@Param({ JDK_MAPPED, JDK_JRT, SYNTHETIC })
+	public String image;
+
+	@Param("100")
+	public int modules;
+
+	@Param("50")
+	public int packagesPerModule;
+
+	@Param("20")
+	public int classesPerPackage;
+
+	@Param("0.5")
+	public double exportRatio;
+
+	@Param("3000")
+	public int classSize;
+
+	/**
+	 * 0 uses all available processors
+	 */
+	@Param("0")
+	public int parallelism;
+
+	JreImage jreImage;
+	PackageIndex packageIndex;
+	List<String[]> modulePackages;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		jreImage = open();
+		packageIndex = ModuleExportTable.read(jreImage).getPackageIndex();
+		modulePackages = new ArrayList<>();
+		for (String module : jreImage.getModules()) {
+			for (String packageDir : jreImage.getPackageDirs(module).keySet()) {
+				if (!packageDir.isEmpty()) {
+					modulePackages.add(new String[] { module, JreImage.toPackageName(packageDir) });
+				}
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		jreImage.close();
+	}
+
+	/**
+	 * @return a new image without cached directories
+	 */
+	JreImage open() throws IOException {
+		Path javaHome = Paths.get(System.getProperty("java.home"));
+		switch (image) {
+		case JDK_MAPPED:
+			return JreProbe.openJreImage(javaHome, true);
+		case JDK_JRT:
+			return JreProbe.openJreImage(javaHome, false);
+		case SYNTHETIC:
+			return new SyntheticJreImage(modules, packagesPerModule, classesPerPackage, exportRatio, classSize);
+		default:
+			throw new IllegalArgumentException("unknown image " + image);
+		}
+	}
+}
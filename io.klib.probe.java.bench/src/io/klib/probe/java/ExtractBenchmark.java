@@ -0,0 +1,66 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extraction of an image into the flat package export tree, optionally
+ * together with the module tree. Every run starts with an empty extraction
+ * cache, so all files are written again.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractBenchmark {
+
+	@Param("false")
+	public boolean extractModules;
+
+	@Param("false")
+	public boolean stubClasses;
+
+	private Path wrkPath;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		wrkPath = Files.createTempDirectory("probe-bench");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(wrkPath)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public long extractPackageExports(BenchmarkImage image) throws IOException {
+		ProbeMetrics metrics = new ProbeMetrics(image.image);
+		Path cachePath = Files.createTempDirectory(wrkPath, "cache");
+		new JreExtractor(image.parallelism, stubClasses, false, metrics, null).extract(image.jreImage,
+				extractModules ? wrkPath.resolve("modules") : null, wrkPath.resolve("packageExports"), null,
+				new ExtractionCache(cachePath), null, image.packageIndex);
+		return metrics.get(ProbeMetrics.Counter.WRITTEN_BYTES);
+	}
+}
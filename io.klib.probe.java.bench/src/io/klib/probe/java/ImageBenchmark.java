@@ -0,0 +1,68 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the structure of an image: traversal of all package directories,
+ * the module to package map, the module export table, the classification
+ * of every package as exported or private and the package dependency graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageBenchmark {
+
+	@Benchmark
+	public int traversePackageDirs(BenchmarkImage image) throws IOException {
+		int files = 0;
+		try (JreImage jreImage = image.open()) {
+			for (String module : jreImage.getModules()) {
+				for (List<String> packageFiles : jreImage.getPackageDirs(module).values()) {
+					files += packageFiles.size();
+				}
+			}
+		}
+		return files;
+	}
+
+	@Benchmark
+	public Map<String, List<String>> scanModule2Packages(BenchmarkImage image) throws IOException {
+		return new PackageScanner(image.parallelism).scan(image.jreImage);
+	}
+
+	@Benchmark
+	public Object readModuleExportTable(BenchmarkImage image) throws IOException {
+		return ModuleExportTable.read(image.jreImage);
+	}
+
+	@Benchmark
+	public int classifyPackages(BenchmarkImage image) {
+		int exported = 0;
+		for (String[] modulePackage : image.modulePackages) {
+			if (image.packageIndex.isExported(modulePackage[0], modulePackage[1])) {
+				exported++;
+			}
+		}
+		return exported;
+	}
+
+	@Benchmark
+	public List<DependencyAnalyzer.PackageDependencies> analyseDependencies(BenchmarkImage image)
+			throws IOException {
+		return new DependencyAnalyzer(image.parallelism, new ProbeMetrics(image.image)).analyse(image.jreImage,
+				image.packageIndex);
+	}
+}
@@ -0,0 +1,68 @@
+package io.klib.probe.java;
+
+import java.lang.module.ModuleDescriptor;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Module and export lookup of a package by the package count of the index,
+ * the cost per lookup is expected to stay flat from 1k to 100k packages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PackageIndexBenchmark {
+
+	private static final int MODULES = 50;
+
+	@Param({ "1000", "100000" })
+	public int packageCount;
+
+	private PackageIndex index;
+	private List<String> privatePackages;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Map<String, ModuleDescriptor> descriptors = new LinkedHashMap<>();
+		for (int m = 0; m < MODULES; m++) {
+			ModuleDescriptor.Builder builder = ModuleDescriptor.newModule("m" + m);
+			for (int p = m; p < packageCount; p += MODULES) {
+				String packageName = "org.example.m" + m + ".p" + p;
+				builder.packages(Set.of(packageName));
+				if (p % 3 == 0) {
+					builder.exports(packageName);
+				}
+			}
+			descriptors.put("m" + m, builder.build());
+		}
+		index = PackageIndex.of(descriptors);
+		privatePackages = index.getAllNonExportedPackages();
+	}
+
+	@Benchmark
+	public boolean lookupModuleAndExport() {
+		String packageName = privatePackages.get(next);
+		next = next + 1 < privatePackages.size() ? next + 1 : 0;
+		return index.isExported(index.getModule(packageName), packageName);
+	}
+}
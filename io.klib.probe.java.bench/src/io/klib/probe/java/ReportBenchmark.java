@@ -0,0 +1,85 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of the meta reports and the binary index, in memory and as files
+ * which are only replaced if their content changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+	private Map<String, List<String>> mapModule2Packages;
+	private MetaReports metaReports;
+	private Path reportDir;
+
+	@Setup(Level.Trial)
+	public void setUp(BenchmarkImage image) throws IOException {
+		mapModule2Packages = new PackageScanner(image.parallelism).scan(image.jreImage);
+		reportDir = Files.createTempDirectory("probe-bench-reports");
+		metaReports = new MetaReports(image.packageIndex, reportDir.resolve(JreProbe.TARGET_MODULES));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(reportDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void writeMetaReports() throws IOException {
+		Writer out = Writer.nullWriter();
+		MetaReports.writeModules2Packages(out, mapModule2Packages);
+		metaReports.writeAllExportedPackages(out);
+		metaReports.writeModules2ExportedPackages(out);
+		metaReports.writeModules2PrivatePackages(out);
+		metaReports.writeAllPrivatePackages(out);
+		metaReports.writeImportEeJ2se(out);
+	}
+
+	@Benchmark
+	public void writeMetaReportFiles() throws IOException {
+		ReportWriter.write(reportDir.resolve(MetaReports.MODULES_2_PACKAGES),
+				out -> MetaReports.writeModules2Packages(out, mapModule2Packages));
+		ReportWriter.write(reportDir.resolve(MetaReports.ALL_EXPORTED_PACKAGES), metaReports::writeAllExportedPackages);
+		ReportWriter.write(reportDir.resolve(MetaReports.MODULES_2_EXPORTED_PACKAGES),
+				metaReports::writeModules2ExportedPackages);
+		ReportWriter.write(reportDir.resolve(MetaReports.MODULES_2_PRIVATE_PACKAGES),
+				metaReports::writeModules2PrivatePackages);
+		ReportWriter.write(reportDir.resolve(MetaReports.ALL_PRIVATE_PACKAGES), metaReports::writeAllPrivatePackages);
+		ReportWriter.write(reportDir.resolve(MetaReports.IMPORT_EE_J2SE), metaReports::writeImportEeJ2se);
+	}
+
+	@Benchmark
+	public void writeIndex(BenchmarkImage image) throws IOException {
+		ProbeIndex.write(OutputStream.nullOutputStream(), "0.0.0", image.packageIndex, image.jreImage);
+	}
+}
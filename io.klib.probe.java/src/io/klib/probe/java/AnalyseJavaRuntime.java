@@ -1,8 +1,6 @@
 package io.klib.probe.java;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -47,15 +45,29 @@ import static java.nio.file.StandardOpenOption.*;
 @Component
 public class AnalyseJavaRuntime {
 
-	private static final String ARG_JRE_PATH = "jrePath=";
+	static final String ARG_JRE_PATH = "jrePath=";
+	static final String ARG_JRE_PATHS = "jrePaths=";
+	static final String ARG_BATCH_PARALLELISM = "batchParallelism=";
+	static final String ARG_PARALLELISM = "parallelism=";
+	static final String ARG_EXTRACT_MODULES = "extractModules=";
+	static final String ARG_EE_JAR = "eeJar=";
+	static final String ARG_PARALLEL_DEFLATE = "parallelDeflate=";
+	static final String ARG_IMAGE_READER = "imageReader=";
+	static final String ARG_DIFF = "diff=";
+	static final String ARG_STUB_CLASSES = "stubClasses=";
+	static final String ARG_DEPENDENCIES = "dependencies=";
+	static final String ARG_CONTENT_STORE = "contentStore=";
+	static final String IMAGE_READER_MAPPED = "mapped";
+	static final String IMAGE_READER_JRT = "jrt";
+	// name of the jrt reader before the mapped reader existed
+	static final String IMAGE_READER_JRTFS = "jrtfs";
+	static final List<String> IMAGE_READERS = Arrays.asList(IMAGE_READER_MAPPED, IMAGE_READER_JRT,
+			IMAGE_READER_JRTFS);
+	private static final int DEFAULT_BATCH_PARALLELISM = 2;
 	private static final String NO_VERSION = "0.0.0";
 	private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyyMMdd-HHmmss.SSS");
 	private static final String JRT_PROTOCOL = "jrt:/";
 	private static final String JRT_MODULES = "jrt:/modules";
-	private Path metaPath;
-	private Path modulesPath;
-	private Path packageExportPath;
-
 	private List<String> progArgs;
 
 	@Reference(target = "(launcher.arguments=*)")
@@ -64,206 +76,142 @@ public class AnalyseJavaRuntime {
 		progArgs = progArgsArray != null ? Arrays.asList(progArgsArray) : new ArrayList<>();
 	}
 
+	public AnalyseJavaRuntime() {
+	}
+
+	/**
+	 * standalone use without an OSGi framework, see {@link ProbeCli}
+	 */
+	AnalyseJavaRuntime(List<String> progArgs) {
+		this.progArgs = progArgs;
+	}
+
 	@Activate
 	private void activate() {
 		long startTimeMillis = System.currentTimeMillis();
 		String begin = String.format("launching app at %s", SIMPLE_DATE_FORMAT.format(startTimeMillis));
 		System.out.println(ansi().eraseScreen().render("@|blue " + begin + "|@"));
-		initDir();
-
-		Path jrePath = getJrePath();
-		extractRuntimeJar(jrePath, modulesPath);
+		run();
+	}
 
+	/**
+	 * runs the probe, diff or batch analysis selected by the program arguments
+	 *
+	 * @return <code>false</code> if an analysis failed
+	 */
+	boolean run() {
+		long startTimeMillis = System.currentTimeMillis();
+		boolean mappedImage;
 		try {
-			// @formatter:off
-
-			// mapping of java modules to exported packages
-			Map<Path, List<String>> mapModulePath2packages = getModule2PackageMap(modulesPath);
-			List<String> listAllModules = mapModulePath2packages.keySet().stream().sorted()
-					.map(p -> p.getFileName().toString()).collect(Collectors.toList());
-			writeModule2Package(mapModulePath2packages, metaPath.resolve("1_modules2packages.txt"));
-
-			// create file containing mapping of Java Modules to exported Packages
-			List<String> listModuleExportingPackages = new LinkedList<>();
-
-			Map<Module, List<String>> mapModuleExportedPackages = retrieveMapModuleExportedPackage();
-			List<String> listAllExportedPackages = new LinkedList<>();
-			mapModuleExportedPackages.keySet()
-					.forEach(k -> listAllExportedPackages.addAll(mapModuleExportedPackages.get(k)));
-			createFlatExportedPackageDir(listAllExportedPackages, modulesPath, packageExportPath);
-
-			Path allExportedPackageFile = metaPath.resolve("2_allExportedPackages.txt");
-			String exportAllHeader = "# all exported packages\n\n";
-			String exportAllPackages = listAllExportedPackages.stream().sorted().map(p -> String.format("    %s", p))
-					.collect(Collectors.joining("\n", "exported java packages:\n", "\n"));
-			Files.writeString(allExportedPackageFile, exportAllHeader + exportAllPackages, StandardCharsets.UTF_8,
-					CREATE, WRITE);
-
-			String exportedModulePackageList = mapModuleExportedPackages.entrySet().stream().map(entry -> {
-				String moduleName = entry.getKey().getName();
-				String packageList = entry.getValue().stream().map(p -> String.format("    %s\n", p))
-						.collect(Collectors.joining());
-				if (packageList.length() > 0) {
-					// module has package exports
-					listModuleExportingPackages.add(moduleName);
-					listAllExportedPackages.addAll(entry.getValue());
-				}
-				return String.format("# module %s\n", moduleName) + packageList;
-			}).collect(Collectors.joining());
-			Path moduleExportedPackageFile = metaPath.resolve("2_modules2ExportedPackages.txt");
-			String exportHeader = "# Java Modules and their exported packages\n\n";
-			String exportModuleHeader = listModuleExportingPackages.stream().map(m -> String.format("    %s", m))
-					.collect(Collectors.joining("\n", "java modules:\n", "\n"));
-			Files.writeString(moduleExportedPackageFile,
-					exportHeader + exportModuleHeader + "\n" + exportedModulePackageList, StandardCharsets.UTF_8,
-					CREATE, WRITE);
-
-			List<String> listModulePrivatePackages = new LinkedList<>();
-			List<String> listAllPrivatePackages = new LinkedList<>();
-			Map<Module, List<String>> mapModulePrivatePackages = retrieveMapModuleNonExportedPackage();
-			String privateModulePackageList = mapModulePrivatePackages.entrySet().stream().map(entry -> {
-				String moduleName = entry.getKey().getName();
-				String packageList = entry.getValue().stream().map(p -> String.format("    %s\n", p))
-						.collect(Collectors.joining());
-				if (packageList.length() > 0) {
-					// module has package privates/ignores
-					listModulePrivatePackages.add(moduleName);
-					listAllPrivatePackages.addAll(entry.getValue());
-				}
-				return String.format("# module %s\n", moduleName) + packageList;
-			}).collect(Collectors.joining());
-			Path modulePrivatePackageFile = metaPath.resolve("3_modules2privatePackages.txt");
-			String privateHeader = "# Java Modules and their private packages\n\n";
-			String privateModuleHeader = listModulePrivatePackages.stream().map(m -> String.format("    %s", m))
-					.collect(Collectors.joining("\n", "java modules:\n", "\n"));
-			Files.writeString(modulePrivatePackageFile,
-					privateHeader + privateModuleHeader + "\n" + privateModulePackageList, StandardCharsets.UTF_8,
-					CREATE, WRITE);
-
-			Path allPrivatePackageFile = metaPath.resolve("3_allPrivatePackages.txt");
-			String privateAllHeader = "# all private packages\n\n";
-			String privateAllPackages = listAllPrivatePackages.stream().sorted().map(p -> String.format("    %s", p))
-					.collect(Collectors.joining("\n", "private java packages:\n", "\n"));
-			Files.writeString(allPrivatePackageFile, privateAllHeader + privateAllPackages, StandardCharsets.UTF_8,
-					CREATE, WRITE);
-
-			// prepare bnd import file for ee.j2se bundle
-			String bndSectionIncludeResource = listModuleExportingPackages.stream()
-					.map(m -> String.format("    ${include_module_%s}", m))
-					.collect(Collectors.joining(",\\\n", "includeresource_j2se:\\\n", "\n"));
-			String bndModuleIncludeResourceList = mapModuleExportedPackages.entrySet().stream().map(e -> {
-				String moduleName = e.getKey().getName();
-				List<String> packageList = e.getValue();
-				String moduleHeader = "";
-				String packageString = "";
-				if (!packageList.isEmpty()) {
-					moduleHeader = String.format("include_module_%s: \\\n", moduleName);
-					packageString = packageList.stream().map(p -> {
-						String packageAsFile = p.replaceAll("\\.", "/");
-						return String.format("    ${workspace}/io.klib.probe.java/wrk/modules/%s/%s/", moduleName,
-								packageAsFile);
-					}).collect(Collectors.joining(",\\\n", "", "\n\n"));
-				}
-				return moduleHeader + packageString;
-			}).collect(Collectors.joining());
-
-			String bndSectionModuleExport = listModuleExportingPackages.stream()
-					.map(m -> String.format("    ${module_%s}", m))
-					.collect(Collectors.joining(",\\\n", "j2see:\\\n", "\n\n"));
-			String bndModuleExportPackageList = mapModuleExportedPackages.entrySet().stream().map(e -> {
-				String moduleName = e.getKey().getName();
-				List<String> packageList = e.getValue();
-				String moduleHeader = "";
-				String packageString = "";
-				if (!packageList.isEmpty()) {
-					moduleHeader = String.format("module_%s: \\\n", moduleName);
-					packageString = packageList.stream().map(p -> String.format("    %s", p)).collect(Collectors
-							.joining(";version=0.0.0;-noimport:=true,\\\n", "", ";version=0.0.0;-noimport:=true\n\n"));
-				}
-				return moduleHeader + packageString;
-			}).collect(Collectors.joining());
-
-			String bndSectionModuleIgnore = listModulePrivatePackages.stream()
-					.map(m -> String.format("    ${ignore_module_%s}", m))
-					.collect(Collectors.joining(",\\\n", "ignore_j2see:\\\n", "\n\n"));
-			String bndModuleIgnorePackageList = mapModulePrivatePackages.entrySet().stream().map(e -> {
-				String moduleName = e.getKey().getName();
-				String moduleHeader = String.format("ignore_module_%s: \\\n", moduleName);
-				String packageList = e.getValue().stream().map(p -> {
-					String packageAsFile = p.replaceAll("\\.", "/");
-					return String.format("    ${workspace}/io.klib.probe.java/wrk/modules/%s/%s/", moduleName,
-							packageAsFile);
-				}).collect(Collectors.joining(",\\\n", "", "\n\n"));
-				return moduleHeader + packageList;
-			}).collect(Collectors.joining());
-
-			Path bndFile = metaPath.resolve("4_import_ee.j2se.txt");
-			String bndHeader = "# bnd macros for JRE modules and exported packages\n\n";
-			Files.writeString(bndFile,
-					bndHeader + "### export_packages\n\n" + bndSectionModuleExport + "\n" + bndModuleExportPackageList
-							+ "\n" + "### includeresource\n\n" + bndSectionIncludeResource + "\n"
-							+ bndModuleIncludeResourceList + "\n" + "### ignore\n\n" + bndSectionModuleIgnore + "\n"
-							+ bndModuleIgnorePackageList,
-					StandardCharsets.UTF_8, CREATE, WRITE);
-			// @formatter:on
+			mappedImage = isMappedImageReader(getArg(ARG_IMAGE_READER).orElse(IMAGE_READER_MAPPED));
+		} catch (IllegalArgumentException e) {
+			System.err.format("%s\n", e.getMessage());
+			return false;
+		}
+		Path wrkPath = initDir();
+		if (wrkPath == null) {
+			return false;
+		}
 
-		} catch (IOException e) {
-			e.printStackTrace();
+		boolean success;
+		JreProbe.Options options = new JreProbe.Options(getParallelism(), isExtractModules(),
+				getArg(ARG_EE_JAR).orElse(null), getArg(ARG_PARALLEL_DEFLATE).map(Boolean::parseBoolean).orElse(false),
+				mappedImage,
+				getArg(ARG_STUB_CLASSES).map(Boolean::parseBoolean).orElse(false),
+				getArg(ARG_DEPENDENCIES).map(Boolean::parseBoolean).orElse(true),
+				getArg(ARG_CONTENT_STORE).filter(s -> !s.isEmpty()).map(wrkPath::resolve).orElse(null));
+		Optional<String> jrePaths = getArg(ARG_JRE_PATHS);
+		Optional<String> diff = getArg(ARG_DIFF);
+		if (diff.isPresent()) {
+			String[] diffJres = diff.get().split(",");
+			if (diffJres.length == 2) {
+				success = JreDiff.run(Paths.get(diffJres[0].trim()), Paths.get(diffJres[1].trim()), wrkPath,
+						options);
+			} else {
+				System.err.format("%s expects two JREs separated by a comma - %s\n", ARG_DIFF, diff.get());
+				success = false;
+			}
+		} else if (jrePaths.isPresent()) {
+			List<Path> listJrePaths = Arrays.stream(jrePaths.get().split(",")).map(String::trim)
+					.filter(p -> !p.isEmpty()).map(Paths::get).collect(Collectors.toList());
+			List<JreProbe.Result> results = new JreBatch(wrkPath, options, getBatchParallelism())
+					.run(listJrePaths);
+			success = results.size() == listJrePaths.size() && results.stream().allMatch(r -> r.failure == null);
+		} else {
+			try {
+				// an archive is unpacked into the workspace like the JREs of a batch
+				Path jreHome = JreArchive.toJreHome(getJreHome(), wrkPath.resolve(JreBatch.JRE_DIR));
+				JreProbe jreProbe = new JreProbe("jre", jreHome, wrkPath, options);
+				success = jreProbe.run().failure == null;
+				jreProbe.getChangeSummary().print(System.out);
+			} catch (IOException e) {
+				e.printStackTrace();
+				success = false;
+			}
 		}
-		System.out.format("execution - started at %s - is finished - took %s ms",
+		System.out.format("execution - started at %s - is finished - took %s ms\n",
 				SIMPLE_DATE_FORMAT.format(startTimeMillis), System.currentTimeMillis() - startTimeMillis);
+		return success;
 	}
 
-	private void initDir() {
-		Path wrkPath;
+	/**
+	 * @return <code>true</code> for the mapped reader, <code>false</code> for
+	 *         the jrt readers
+	 * @throws IllegalArgumentException if the image reader is unknown
+	 */
+	static boolean isMappedImageReader(String imageReader) {
+		if (!IMAGE_READERS.contains(imageReader)) {
+			throw new IllegalArgumentException(
+					String.format("%s expects one of %s - %s", ARG_IMAGE_READER, IMAGE_READERS, imageReader));
+		}
+		return IMAGE_READER_MAPPED.equals(imageReader);
+	}
+
+	private Path initDir() {
+		Path wrkPath = null;
 		try {
 			String optTmpDir = Files.createTempDirectory("_jre_extraction_").toString();
 			wrkPath = Paths.get(System.getProperty("user.dir", optTmpDir).concat("/wrk"));
-			metaPath = createDir(wrkPath.resolve("meta"));
-			modulesPath = createDir(wrkPath.resolve("modules"));
-			packageExportPath = createDir(wrkPath.resolve("packageExports"));
+			createDir(wrkPath);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		return wrkPath;
+	}
+
+	private Optional<String> getArg(String argPrefix) {
+		return progArgs.stream().filter(p -> p.startsWith(argPrefix)).findFirst()
+				.map(p -> p.substring(argPrefix.length()).trim());
+	}
+
+	private int getParallelism() {
+		Optional<String> parallelism = getArg(ARG_PARALLELISM);
+		if (parallelism.isPresent()) {
+			try {
+				return Integer.parseInt(parallelism.get());
+			} catch (NumberFormatException e) {
+				System.err.format("invalid argument %s%s - using default parallelism\n", ARG_PARALLELISM,
+						parallelism.get());
+			}
+		}
+		return Runtime.getRuntime().availableProcessors();
 	}
 
-	private Path getJrePath() {
-		Path jrePath = Paths.get(URI.create(JRT_MODULES));
-		Optional<String> findFirst = progArgs.stream().filter(p -> p.startsWith(ARG_JRE_PATH)).findFirst();
-		if (findFirst.isPresent()) {
-			String jreString = findFirst.get().replaceFirst(ARG_JRE_PATH, "");
-			Path jreRtLib = Paths.get(jreString).resolve("lib").resolve("jrt-fs.jar");
-			if (Files.exists(jreRtLib)) {
-				URLClassLoader loader;
-				try {
-					loader = new URLClassLoader(new URL[] { jreRtLib.toUri().toURL() });
-					FileSystem fs = FileSystems.newFileSystem(URI.create(JRT_PROTOCOL), Collections.emptyMap(), loader);
-					jrePath = fs.getPath("/modules");
-				} catch (MalformedURLException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+	private int getBatchParallelism() {
+		Optional<String> batchParallelism = getArg(ARG_BATCH_PARALLELISM);
+		if (batchParallelism.isPresent()) {
+			try {
+				return Integer.parseInt(batchParallelism.get());
+			} catch (NumberFormatException e) {
+				System.err.format("invalid argument %s%s - using default batch parallelism\n", ARG_BATCH_PARALLELISM,
+						batchParallelism.get());
 			}
 		}
-		return jrePath;
+		return DEFAULT_BATCH_PARALLELISM;
 	}
 
-	private void writeModule2Package(Map<Path, List<String>> mapModulePath2packages, Path modulePackageFile)
-			throws IOException {
-		List<String> listModulePackages = new LinkedList<>();
-		String modulePackageList = mapModulePath2packages.entrySet().stream().map(e -> {
-			String moduleName = e.getKey().getFileName().toString();
-			String packageList = e.getValue().stream().map(p -> String.format("    %s\n", p))
-					.collect(Collectors.joining());
-			listModulePackages.add(moduleName);
-			return String.format("# module %s\n", moduleName) + packageList + "\n";
-		}).collect(Collectors.joining());
-		String physicalHeader = "# java modules and there extracted packages / unzipped jrt-fs.jar\n\n";
-		String physicalModuleHeader = listModulePackages.stream().map(m -> String.format("    %s", m))
-				.collect(Collectors.joining("\n", "java modules:\n", "\n"));
-		Files.writeString(modulePackageFile, physicalHeader + physicalModuleHeader + "\n" + modulePackageList,
-				StandardCharsets.UTF_8, CREATE, WRITE);
+	private boolean isExtractModules() {
+		return getArg(ARG_EXTRACT_MODULES).map(Boolean::parseBoolean).orElse(true);
 	}
 
 	private Path createDir(Path dirPath) {
@@ -272,33 +220,6 @@ public class AnalyseJavaRuntime {
 		return dirPath;
 	}
 
-	private Map<Path, List<String>> getModule2PackageMap(Path modules) throws IOException {
-		Map<Path, List<String>> mapModulePath2packages = new LinkedHashMap<>();
-
-		List<Path> modulePathList = Files.list(modules).filter(Files::isDirectory).map(m -> m)
-				.collect(Collectors.toList());
-		modulePathList.forEach(m -> {
-			try {
-				// @formatter:off
-				List<String> packageList = Files.walk(m).filter(p -> // filter only directories containing files
-				p.toFile().isDirectory() && p.toFile().listFiles(new FileFilter() {
-					@Override
-					public boolean accept(File pathname) {
-						return pathname.isFile() && pathname.toString().endsWith(".class");
-					}
-				}).length > 0).map(d -> m.relativize(d).toString()) // package name
-						.map(p -> p.replaceAll("[\\\\,/]", ".")) // . instead of path.seperator
-						.filter(p -> p.length() > 0) // ? remove empty first element ?
-						.collect(Collectors.toList());
-				mapModulePath2packages.put(m, packageList);
-				// @formatter:on
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		});
-		return mapModulePath2packages;
-	}
-
 	private static void writeFile(Path filePath, List<String> l) {
 
 		String packageList = l.stream().map(p -> p.toString()).collect(Collectors.joining(",\n"));
@@ -320,144 +241,8 @@ public class AnalyseJavaRuntime {
 		return modulePackageMap;
 	}
 
-	private void extractRuntimeJar(Path jrePath, Path extractPath) {
-		// if there is already an "java.*" folder skip extraction
-		File wrkDir = extractPath.toFile();
-		if (!wrkDir.exists() || wrkDir.list(new FilenameFilter() {
-			@Override
-			public boolean accept(File dir, String name) {
-				return name.startsWith("java.");
-			}
-		}).length == 0) {
-			try {
-				Files.walk(jrePath).filter(Files::isRegularFile).forEach(f -> {
-					Path classfilePath = f.subpath(1, f.getNameCount());
-					Path targetModulePath = extractPath.resolve(classfilePath.toString());
-					try {
-						createDir(targetModulePath.getParent());
-						if (!Files.exists(targetModulePath)) {
-							Files.copy(classfilePath.toUri().toURL().openStream(), targetModulePath);
-						} else {
-							System.err.format("warning - duplicate content in JRE %s", targetModulePath);
-						}
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				});
-			} catch (FileSystemNotFoundException | IOException ex) {
-				System.err.println("could not read my modules (perhaps not Java >8).");
-			}
-			System.out.format("successfully extracted JRE into %s\n", extractPath);
-		} else {
-			System.out.format("skipped extraction JRE module folder already exists inside %s\n", extractPath);
-		}
-	}
-
-	private void createFlatExportedPackageDir(List<String> listAllExportedPackages, Path extractPath,
-			Path flatExportPackagePath) {
-		try {
-			// iterate over modules
-			Files.list(extractPath).forEach(m -> {
-				try {
-					int mCount = m.getNameCount();
-					Files.walk(m).filter(Files::isDirectory).distinct().forEach(p -> {
-						int pCount = p.getNameCount();
-						if (pCount > mCount) {
-							String packageName = p.subpath(mCount, pCount).toString().replaceAll("\\\\|/", ".");
-							if (listAllExportedPackages.contains(packageName)) {
-								System.out.format("copying exported package %s\n", packageName);
-								try {
-									Files.list(p).filter(Files::isRegularFile).forEach(f -> {
-										int fCount = f.getNameCount();
-										Path classfilePath = f.subpath(mCount, fCount);
-										Path targetFilePath = flatExportPackagePath.resolve(classfilePath.toString());
-										System.out.format("copying %s to %s\n", classfilePath, targetFilePath);
-										try {
-											Path packagePath = targetFilePath.getParent();
-											createDir(packagePath);
-											if (!Files.exists(targetFilePath)) {
-												Files.copy(f.toUri().toURL().openStream(), targetFilePath);
-											} else {
-												System.err.format("warning - duplicate content in JRE - %s\n", f);
-											}
-										} catch (IOException e) {
-											e.printStackTrace();
-										}
-									});
-								} catch (IOException e1) {
-									System.err.format("could not read module dir %s\n%s\n", p, e1);
-								}
-							} else {
-								System.out.format("skip private package %s\n", packageName);
-							}
-						}
-					});
-
-				} catch (IOException e) {
-					System.err.format("could not read module dir %s\n%s\n", m, e);
-				}
-			});
-
-		} catch (FileSystemNotFoundException | IOException ex) {
-			System.err.println("could not read my JRE (perhaps not Java >8).");
-		}
-		System.out.format("# completed creation of flat exported packages\n");
-	}
-
-	private static Map<Module, List<String>> retrieveMapModuleExportedPackage() {
-
-		List<Module> listOfNamedModules = ModuleLayer.boot().modules().stream().filter(new Predicate<Module>() {
-			// remove probe module
-			@Override
-			public boolean test(Module m) {
-				return m.equals(this.getClass().getModule()) ? false : true;
-			}
-		}).sorted(new Comparator<Module>() {
-			@Override
-			public int compare(Module m0, Module m1) {
-				return m0.getName().compareTo(m1.getName());
-			}
-		}).collect(Collectors.toList());
-
-		Map<Module, List<String>> mapModuleExportPackages = new LinkedHashMap<>(listOfNamedModules.size());
-		List<String> listOfExportedPackages = new LinkedList<>();
-		listOfNamedModules.forEach(m -> {
-			mapModuleExportPackages.put(m, listExportedJavaPackages(m));
-		});
-
-		return mapModuleExportPackages;
-	}
-
-	private static Map<Module, List<String>> retrieveMapModuleNonExportedPackage() {
-
-		List<Module> listOfNamedModules = ModuleLayer.boot().modules().stream().filter(new Predicate<Module>() {
-			// remove probe module
-			@Override
-			public boolean test(Module m) {
-				return m.equals(this.getClass().getModule()) ? false : true;
-			}
-		}).sorted(new Comparator<Module>() {
-			@Override
-			public int compare(Module m0, Module m1) {
-				return m0.getName().compareTo(m1.getName());
-			}
-		}).collect(Collectors.toList());
-
-		Map<Module, List<String>> mapModuleNonExportPackages = new LinkedHashMap<>(listOfNamedModules.size());
-		List<String> listOfNonExportedPackages = new LinkedList<>();
-		listOfNamedModules.forEach(m -> {
-			mapModuleNonExportPackages.put(m, listNonExportedJavaPackages(m));
-		});
-
-		return mapModuleNonExportPackages;
-	}
-
-	private static List<String> listExportedJavaPackages(Module m) {
-		return m.getPackages().stream().sorted().filter(p -> m.isExported(p)).collect(Collectors.toList());
-	}
-
-	private static List<String> listNonExportedJavaPackages(Module m) {
-		return m.getPackages().stream().sorted().filter(p -> !m.isExported(p)).collect(Collectors.toList());
+	private Path getJreHome() {
+		return getArg(ARG_JRE_PATH).map(Paths::get).orElse(Paths.get(System.getProperty("java.home")));
 	}
 
 	private static List<Package> listAllJavaPackages() {
@@ -486,7 +271,7 @@ public class AnalyseJavaRuntime {
 	private static String formatPackageAsBndIgnoreList(List<String> listOfPackages) {
 		StringJoiner sj = new StringJoiner("|", "", "");
 		listOfPackages.stream().sorted().forEach(p -> {
-			String packageAsDir = p.replaceAll("\\.", "/");
+			String packageAsDir = p.replace('.', '/');
 			sj.add(packageAsDir);
 		});
 		return "(" + sj.toString() + ")";
@@ -536,8 +321,8 @@ public class AnalyseJavaRuntime {
 		}
 	}
 
-	public static void main(String[] args) throws IOException {
-		new AnalyseJavaRuntime().activate();
+	public static void main(String[] args) {
+		ProbeCli.main(args);
 	}
 
 }
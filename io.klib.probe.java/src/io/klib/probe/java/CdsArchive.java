@@ -0,0 +1,98 @@
+package io.klib.probe.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Creates an application class data sharing archive of the classes loaded by a
+ * training run of the {@link ProbeCli}. Java 13 and later dump the archive at
+ * the end of the training run, Java 11 and 12 record the class list first and
+ * dump it in a second run.
+ */
+final class CdsArchive {
+
+	private static final String CLASS_LIST_SUFFIX = ".classlist";
+	private static final int DYNAMIC_ARCHIVE_FEATURE = 13;
+
+	private CdsArchive() {
+	}
+
+	/**
+	 * @param trainingArgs program arguments of the training run
+	 * @return <code>false</code> if the archive could not be created
+	 */
+	static boolean create(Path archive, List<String> trainingArgs) {
+		long startTimeMillis = System.currentTimeMillis();
+		String classPath = System.getProperty("java.class.path");
+		Arrays.stream(classPath.split(File.pathSeparator)).filter(e -> Files.isDirectory(Paths.get(e)))
+				.forEach(e -> System.err.format("classes of directory %s are not archived, only jar files are\n", e));
+		try {
+			Files.createDirectories(archive.toAbsolutePath().getParent());
+			Files.deleteIfExists(archive);
+			boolean created;
+			if (Runtime.version().feature() >= DYNAMIC_ARCHIVE_FEATURE) {
+				created = java(classPath, trainingArgs, "-XX:ArchiveClassesAtExit=" + archive);
+			} else {
+				Path classList = archive.resolveSibling(archive.getFileName() + CLASS_LIST_SUFFIX);
+				try {
+					created = java(classPath, trainingArgs, "-Xshare:off", "-XX:DumpLoadedClassList=" + classList)
+							&& java(classPath, null, "-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+									"-XX:SharedArchiveFile=" + archive);
+				} finally {
+					Files.deleteIfExists(classList);
+				}
+			}
+			if (!created || !Files.exists(archive)) {
+				System.err.format("could not create class data sharing archive %s\n", archive);
+				return false;
+			}
+			System.out.format("created class data sharing archive %s of %.1f MB - took %d ms\n", archive,
+					Files.size(archive) / 1024.0 / 1024.0, System.currentTimeMillis() - startTimeMillis);
+			System.out.format("launch with: java -XX:SharedArchiveFile=%s -cp %s %s\n", archive, classPath,
+					ProbeCli.class.getName());
+			return true;
+		} catch (IOException e) {
+			System.err.format("could not create class data sharing archive %s\n%s\n", archive, e);
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * runs the {@link ProbeCli} with the JVM options of this process, or only
+	 * the JVM for <code>programArgs == null</code>
+	 */
+	private static boolean java(String classPath, List<String> programArgs, String... jvmOptions)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(ProcessHandle.current().info().command()
+				.orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString()));
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+				.filter(o -> !o.startsWith("-Xshare") && !o.startsWith("-XX:SharedArchiveFile")
+						&& !o.startsWith("-XX:ArchiveClassesAtExit") && !o.startsWith("-XX:DumpLoadedClassList")
+						&& !o.startsWith("-XX:SharedClassListFile"))
+				.collect(Collectors.toList()));
+		command.addAll(Arrays.asList(jvmOptions));
+		command.add("-cp");
+		command.add(classPath);
+		if (programArgs != null) {
+			command.add(ProbeCli.class.getName());
+			command.addAll(programArgs);
+		}
+		int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+		if (exitCode != 0) {
+			System.err.format("%s exited with %d\n", String.join(" ", command), exitCode);
+		}
+		return exitCode == 0;
+	}
+}
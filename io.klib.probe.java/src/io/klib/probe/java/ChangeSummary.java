@@ -0,0 +1,38 @@
+package io.klib.probe.java;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects which generated artefacts were created, updated or left untouched
+ * by a probe run.
+ */
+class ChangeSummary {
+
+	enum Change {
+		CREATED, UPDATED, UNCHANGED
+	}
+
+	private final Map<String, String> mapArtefactChanges = new LinkedHashMap<>();
+	private boolean changed;
+
+	synchronized void record(String artefact, Change change) {
+		record(artefact, change, null);
+	}
+
+	synchronized void record(String artefact, Change change, String detail) {
+		String description = change.name().toLowerCase();
+		mapArtefactChanges.put(artefact, detail != null ? description + " - " + detail : description);
+		changed |= change != Change.UNCHANGED;
+	}
+
+	synchronized boolean hasChanges() {
+		return changed;
+	}
+
+	synchronized void print(PrintStream out) {
+		out.format("change summary - %s\n", changed ? "artefacts changed" : "all artefacts are up to date");
+		mapArtefactChanges.forEach((artefact, change) -> out.format("    %-32s %s\n", artefact, change));
+	}
+}
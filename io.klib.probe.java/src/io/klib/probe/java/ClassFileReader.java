@@ -0,0 +1,407 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimal reader of the class file format. It parses the constant pool, the
+ * class header and the field and method declarations, attributes are skipped.
+ * Constant pool strings are only decoded on access.
+ */
+final class ClassFileReader {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_PROTECTED = 0x0004;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_INTERFACE = 0x0200;
+	static final int ACC_ABSTRACT = 0x0400;
+	static final int ACC_SYNTHETIC = 0x1000;
+	static final int ACC_MODULE = 0x8000;
+
+	static final int MAGIC = 0xCAFEBABE;
+	static final int CONSTANT_UTF8 = 1;
+	static final int CONSTANT_INTEGER = 3;
+	static final int CONSTANT_FLOAT = 4;
+	static final int CONSTANT_LONG = 5;
+	static final int CONSTANT_DOUBLE = 6;
+	static final int CONSTANT_CLASS = 7;
+	static final int CONSTANT_STRING = 8;
+	static final int CONSTANT_FIELDREF = 9;
+	static final int CONSTANT_METHODREF = 10;
+	static final int CONSTANT_INTERFACE_METHODREF = 11;
+	static final int CONSTANT_NAME_AND_TYPE = 12;
+	static final int CONSTANT_METHOD_HANDLE = 15;
+	static final int CONSTANT_METHOD_TYPE = 16;
+	static final int CONSTANT_DYNAMIC = 17;
+	static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	static final int CONSTANT_MODULE = 19;
+	static final int CONSTANT_PACKAGE = 20;
+
+	/**
+	 * field or method declaration
+	 */
+	static final class Member {
+		final int access;
+		final String name;
+		final String descriptor;
+
+		Member(int access, String name, String descriptor) {
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+		}
+
+		/**
+		 * @return true for public and protected members, which are visible to
+		 *         other bundles
+		 */
+		boolean isApi() {
+			return (access & (ACC_PUBLIC | ACC_PROTECTED)) != 0 && (access & ACC_SYNTHETIC) == 0;
+		}
+
+		@Override
+		public String toString() {
+			// method descriptors start with their parameter list
+			return descriptor.startsWith("(") ? name + descriptor : name + " " + descriptor;
+		}
+	}
+
+	private final ByteBuffer content;
+	private final int[] constantOffsets;
+	private final String[] constantStrings;
+	private final int majorVersion;
+	private final int access;
+	private final int thisClass;
+	private final int superClass;
+	private final int[] interfaces;
+	private final int headerOffset;
+	private final int fieldCount;
+	// access, name and descriptor index of the fields followed by the methods
+	private final int[] memberAccess;
+	private final int[] memberNames;
+	private final int[] memberDescriptors;
+	private List<Member> fields;
+	private List<Member> methods;
+
+	/**
+	 * @param content class file, read from its current position
+	 */
+	ClassFileReader(ByteBuffer content) throws IOException {
+		this.content = content.slice();
+		try {
+			if (this.content.getInt() != MAGIC) {
+				throw new IOException("not a class file");
+			}
+			this.content.getShort();
+			majorVersion = u2();
+			int constantCount = u2();
+			constantOffsets = new int[constantCount];
+			constantStrings = new String[constantCount];
+			for (int i = 1; i < constantCount; i++) {
+				constantOffsets[i] = this.content.position();
+				int tag = u1();
+				switch (tag) {
+				case CONSTANT_UTF8:
+					skip(u2());
+					break;
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					skip(4);
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					skip(8);
+					// 8 byte constants take two entries
+					i++;
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					skip(2);
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					skip(3);
+					break;
+				default:
+					throw new IOException(String.format("unknown constant pool tag %d at entry %d", tag, i));
+				}
+			}
+			headerOffset = this.content.position();
+			access = u2();
+			thisClass = u2();
+			superClass = u2();
+			interfaces = new int[u2()];
+			for (int i = 0; i < interfaces.length; i++) {
+				interfaces[i] = u2();
+			}
+			int[][] members = new int[3][];
+			fieldCount = readMembers(members, 0);
+			readMembers(members, fieldCount);
+			memberAccess = members[0];
+			memberNames = members[1];
+			memberDescriptors = members[2];
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("truncated class file", e);
+		}
+	}
+
+	/**
+	 * reads the member table into the arrays of access, name and descriptor
+	 * indices, starting at the given member
+	 *
+	 * @return number of members in the table
+	 */
+	private int readMembers(int[][] members, int start) throws IOException {
+		int count = u2();
+		for (int i = 0; i < 3; i++) {
+			members[i] = members[i] == null ? new int[count] : Arrays.copyOf(members[i], start + count);
+		}
+		for (int i = start; i < start + count; i++) {
+			members[0][i] = u2();
+			members[1][i] = u2();
+			members[2][i] = u2();
+			checkTag(members[1][i], CONSTANT_UTF8);
+			checkTag(members[2][i], CONSTANT_UTF8);
+			skipAttributes();
+		}
+		return count;
+	}
+
+	private List<Member> toMembers(int start, int end) throws IOException {
+		List<Member> members = new ArrayList<>(end - start);
+		for (int i = start; i < end; i++) {
+			members.add(new Member(memberAccess[i], getUtf8(memberNames[i]), getUtf8(memberDescriptors[i])));
+		}
+		return Collections.unmodifiableList(members);
+	}
+
+	private void skipAttributes() {
+		int count = u2();
+		for (int i = 0; i < count; i++) {
+			u2();
+			skip(content.getInt());
+		}
+	}
+
+	private int u1() {
+		return content.get() & 0xFF;
+	}
+
+	private int u2() {
+		return content.getShort() & 0xFFFF;
+	}
+
+	private void skip(int length) {
+		content.position(content.position() + length);
+	}
+
+	int getMajorVersion() {
+		return majorVersion;
+	}
+
+	int getAccess() {
+		return access;
+	}
+
+	/**
+	 * @return true for public classes and interfaces, protected nested classes
+	 *         are public in the class file as well
+	 */
+	boolean isApi() {
+		return (access & ACC_PUBLIC) != 0 && (access & (ACC_MODULE | ACC_SYNTHETIC)) == 0;
+	}
+
+	/**
+	 * @return internal name, e.g. java/lang/Object
+	 */
+	String getClassName() throws IOException {
+		return getClassConstant(thisClass);
+	}
+
+	/**
+	 * @return internal name of the super class, <code>null</code> for
+	 *         java/lang/Object and module-info
+	 */
+	String getSuperName() throws IOException {
+		return superClass == 0 ? null : getClassConstant(superClass);
+	}
+
+	List<String> getInterfaces() throws IOException {
+		List<String> names = new ArrayList<>(interfaces.length);
+		for (int index : interfaces) {
+			names.add(getClassConstant(index));
+		}
+		return names;
+	}
+
+	List<Member> getFields() throws IOException {
+		if (fields == null) {
+			fields = toMembers(0, fieldCount);
+		}
+		return fields;
+	}
+
+	List<Member> getMethods() throws IOException {
+		if (methods == null) {
+			methods = toMembers(fieldCount, memberAccess.length);
+		}
+		return methods;
+	}
+
+	/**
+	 * @return number of fields and methods, which are addressed by the member
+	 *         accessors with the fields first
+	 */
+	int getMemberCount() {
+		return memberAccess.length;
+	}
+
+	int getMemberAccess(int member) {
+		return memberAccess[member];
+	}
+
+	/**
+	 * @return constant pool index of the descriptor of the member
+	 */
+	int getMemberDescriptorIndex(int member) {
+		return memberDescriptors[member];
+	}
+
+	/**
+	 * @return constant pool index of the CONSTANT_Class entry of the super
+	 *         class, 0 for java/lang/Object and module-info
+	 */
+	int getSuperClassIndex() {
+		return superClass;
+	}
+
+	/**
+	 * @return constant pool indices of the CONSTANT_Class entries of the
+	 *         interfaces
+	 */
+	int[] getInterfaceIndices() {
+		return interfaces.clone();
+	}
+
+	/**
+	 * @return the class file, positioned at its first byte
+	 */
+	ByteBuffer getContent() {
+		return content.duplicate().position(0);
+	}
+
+	/**
+	 * @return offset of the access flags, which follow the constant pool
+	 */
+	int getHeaderOffset() {
+		return headerOffset;
+	}
+
+	/**
+	 * @return offset of the tag of the constant pool entry
+	 */
+	int getConstantOffset(int index) {
+		return constantOffsets[index];
+	}
+
+	int getConstantCount() {
+		return constantOffsets.length;
+	}
+
+	/**
+	 * @return tag of the constant pool entry, 0 for the unused entries
+	 */
+	int getConstantTag(int index) {
+		return constantOffsets[index] == 0 ? 0 : content.get(constantOffsets[index]) & 0xFF;
+	}
+
+	/**
+	 * @return offset of the first byte of the CONSTANT_Utf8 entry
+	 */
+	int getUtf8Offset(int index) throws IOException {
+		checkTag(index, CONSTANT_UTF8);
+		return constantOffsets[index] + 3;
+	}
+
+	/**
+	 * @return length of the CONSTANT_Utf8 entry in bytes
+	 */
+	int getUtf8Length(int index) throws IOException {
+		checkTag(index, CONSTANT_UTF8);
+		return content.getShort(constantOffsets[index] + 1) & 0xFFFF;
+	}
+
+	/**
+	 * @return first u2 operand of the constant pool entry, e.g. the name of a
+	 *         CONSTANT_Class or the descriptor of a CONSTANT_MethodType
+	 */
+	int getConstantOperand(int index) {
+		return content.getShort(constantOffsets[index] + 1) & 0xFFFF;
+	}
+
+	/**
+	 * @return second u2 operand of the constant pool entry, e.g. the descriptor
+	 *         of a CONSTANT_NameAndType
+	 */
+	int getSecondConstantOperand(int index) {
+		return content.getShort(constantOffsets[index] + 3) & 0xFFFF;
+	}
+
+	/**
+	 * @return internal name referenced by a CONSTANT_Class entry
+	 */
+	String getClassConstant(int index) throws IOException {
+		checkTag(index, CONSTANT_CLASS);
+		return getUtf8(content.getShort(constantOffsets[index] + 1) & 0xFFFF);
+	}
+
+	String getUtf8(int index) throws IOException {
+		String value = constantStrings[index];
+		if (value == null) {
+			checkTag(index, CONSTANT_UTF8);
+			int offset = constantOffsets[index] + 1;
+			value = decodeModifiedUtf8(offset + 2, content.getShort(offset) & 0xFFFF);
+			constantStrings[index] = value;
+		}
+		return value;
+	}
+
+	private void checkTag(int index, int tag) throws IOException {
+		if (index <= 0 || index >= constantOffsets.length || getConstantTag(index) != tag) {
+			throw new IOException(String.format("constant pool entry %d is not of type %d", index, tag));
+		}
+	}
+
+	private String decodeModifiedUtf8(int offset, int length) {
+		char[] chars = new char[length];
+		int count = 0;
+		int end = offset + length;
+		while (offset < end) {
+			int b = content.get(offset++) & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+			} else if ((b & 0xE0) == 0xC0) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (content.get(offset++) & 0x3F));
+			} else {
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((content.get(offset++) & 0x3F) << 6)
+						| (content.get(offset++) & 0x3F));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+}
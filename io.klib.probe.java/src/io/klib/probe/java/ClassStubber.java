@@ -0,0 +1,388 @@
+package io.klib.probe.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static io.klib.probe.java.ClassFileReader.*;
+
+/**
+ * Rewrites a class file into an API-only stub. Private members, static
+ * initializers and all code are dropped, signatures, constant values,
+ * annotations and generic signatures are kept. The constant pool is rebuilt
+ * with the entries still referenced by the stub, so the constants only used
+ * by method bodies disappear as well.
+ */
+final class ClassStubber {
+
+	private static final String CLASS_INIT = "<clinit>";
+	private static final String RECORD = "Record";
+
+	/**
+	 * attributes of classes, fields, methods and record components kept in the
+	 * stub, all others (Code, SourceFile, BootstrapMethods, ...) are dropped
+	 */
+	private static final Set<String> API_ATTRIBUTES = Set.of("ConstantValue", "Signature", "Exceptions",
+			"Deprecated", "Synthetic", "InnerClasses", "EnclosingMethod", "NestHost", "NestMembers",
+			"PermittedSubclasses", RECORD, "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations",
+			"RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations",
+			"RuntimeVisibleTypeAnnotations", "RuntimeInvisibleTypeAnnotations", "AnnotationDefault",
+			"MethodParameters");
+
+	private final ClassFileReader reader;
+	private final ByteBuffer in;
+	private final int[] mapConstants;
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream(1 << 12);
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private int constantCount = 1;
+
+	private ClassStubber(ClassFileReader reader) {
+		this.reader = reader;
+		this.in = reader.getContent();
+		this.mapConstants = new int[reader.getConstantCount()];
+	}
+
+	/**
+	 * @return the stub of the class file, module-info is returned unchanged
+	 */
+	static ByteBuffer stub(ByteBuffer classFile) throws IOException {
+		ClassFileReader reader = new ClassFileReader(classFile);
+		if ((reader.getAccess() & ACC_MODULE) != 0) {
+			return reader.getContent();
+		}
+		try {
+			return new ClassStubber(reader).write();
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("malformed class file", e);
+		}
+	}
+
+	private ByteBuffer write() throws IOException {
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(in.capacity() / 2);
+		DataOutputStream body = new DataOutputStream(bodyBytes);
+		in.position(reader.getHeaderOffset());
+		body.writeShort(u2());
+		body.writeShort(mapU2());
+		body.writeShort(mapU2());
+		int interfaceCount = u2();
+		body.writeShort(interfaceCount);
+		for (int i = 0; i < interfaceCount; i++) {
+			body.writeShort(mapU2());
+		}
+		copyMembers(body);
+		copyMembers(body);
+		copyAttributes(body);
+
+		ByteArrayOutputStream stubBytes = new ByteArrayOutputStream(10 + poolBytes.size() + bodyBytes.size());
+		DataOutputStream stub = new DataOutputStream(stubBytes);
+		stub.writeInt(MAGIC);
+		stub.writeShort(in.getShort(4));
+		stub.writeShort(in.getShort(6));
+		stub.writeShort(constantCount);
+		poolBytes.writeTo(stub);
+		bodyBytes.writeTo(stub);
+		return ByteBuffer.wrap(stubBytes.toByteArray());
+	}
+
+	private void copyMembers(DataOutputStream out) throws IOException {
+		int count = u2();
+		List<Integer> keptOffsets = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int offset = in.position();
+			int access = u2();
+			String name = reader.getUtf8(u2());
+			u2();
+			skipAttributes();
+			if ((access & ACC_PRIVATE) == 0 && !CLASS_INIT.equals(name)) {
+				keptOffsets.add(offset);
+			}
+		}
+		int end = in.position();
+		out.writeShort(keptOffsets.size());
+		for (int offset : keptOffsets) {
+			in.position(offset);
+			out.writeShort(u2());
+			out.writeShort(mapU2());
+			out.writeShort(mapU2());
+			copyAttributes(out);
+		}
+		in.position(end);
+	}
+
+	private void skipAttributes() {
+		int count = u2();
+		for (int i = 0; i < count; i++) {
+			u2();
+			int length = in.getInt();
+			in.position(in.position() + length);
+		}
+	}
+
+	/**
+	 * copies the API attributes, remapping their constant pool references
+	 */
+	private void copyAttributes(DataOutputStream out) throws IOException {
+		int count = u2();
+		List<byte[]> kept = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int nameIndex = u2();
+			int length = in.getInt();
+			int end = in.position() + length;
+			String name = reader.getUtf8(nameIndex);
+			if (API_ATTRIBUTES.contains(name)) {
+				ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream(length + 6);
+				DataOutputStream attribute = new DataOutputStream(attributeBytes);
+				copyAttribute(name, attribute);
+				if (in.position() != end) {
+					throw new IOException(String.format("unexpected length of attribute %s", name));
+				}
+				ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(length + 6);
+				DataOutputStream header = new DataOutputStream(headerBytes);
+				header.writeShort(map(nameIndex));
+				header.writeInt(attributeBytes.size());
+				attributeBytes.writeTo(header);
+				kept.add(headerBytes.toByteArray());
+			}
+			in.position(end);
+		}
+		out.writeShort(kept.size());
+		for (byte[] attribute : kept) {
+			out.write(attribute);
+		}
+	}
+
+	private void copyAttribute(String name, DataOutputStream out) throws IOException {
+		switch (name) {
+		case "ConstantValue":
+		case "Signature":
+		case "NestHost":
+			out.writeShort(mapU2());
+			break;
+		case "Exceptions":
+		case "NestMembers":
+		case "PermittedSubclasses":
+			int classCount = u2();
+			out.writeShort(classCount);
+			for (int i = 0; i < classCount; i++) {
+				out.writeShort(mapU2());
+			}
+			break;
+		case "InnerClasses":
+			int innerClassCount = u2();
+			out.writeShort(innerClassCount);
+			for (int i = 0; i < innerClassCount; i++) {
+				out.writeShort(mapU2());
+				out.writeShort(mapU2());
+				out.writeShort(mapU2());
+				out.writeShort(u2());
+			}
+			break;
+		case "EnclosingMethod":
+			out.writeShort(mapU2());
+			out.writeShort(mapU2());
+			break;
+		case "MethodParameters":
+			int parameterCount = u1();
+			out.writeByte(parameterCount);
+			for (int i = 0; i < parameterCount; i++) {
+				out.writeShort(mapU2());
+				out.writeShort(u2());
+			}
+			break;
+		case RECORD:
+			int componentCount = u2();
+			out.writeShort(componentCount);
+			for (int i = 0; i < componentCount; i++) {
+				out.writeShort(mapU2());
+				out.writeShort(mapU2());
+				copyAttributes(out);
+			}
+			break;
+		case "RuntimeVisibleAnnotations":
+		case "RuntimeInvisibleAnnotations":
+			copyAnnotations(out);
+			break;
+		case "RuntimeVisibleParameterAnnotations":
+		case "RuntimeInvisibleParameterAnnotations":
+			int parameters = u1();
+			out.writeByte(parameters);
+			for (int i = 0; i < parameters; i++) {
+				copyAnnotations(out);
+			}
+			break;
+		case "RuntimeVisibleTypeAnnotations":
+		case "RuntimeInvisibleTypeAnnotations":
+			int typeAnnotationCount = u2();
+			out.writeShort(typeAnnotationCount);
+			for (int i = 0; i < typeAnnotationCount; i++) {
+				copyTypeAnnotation(out);
+			}
+			break;
+		case "AnnotationDefault":
+			copyElementValue(out);
+			break;
+		default:
+			// Deprecated and Synthetic have no content
+			break;
+		}
+	}
+
+	private void copyAnnotations(DataOutputStream out) throws IOException {
+		int count = u2();
+		out.writeShort(count);
+		for (int i = 0; i < count; i++) {
+			copyAnnotation(out);
+		}
+	}
+
+	private void copyAnnotation(DataOutputStream out) throws IOException {
+		out.writeShort(mapU2());
+		int pairCount = u2();
+		out.writeShort(pairCount);
+		for (int i = 0; i < pairCount; i++) {
+			out.writeShort(mapU2());
+			copyElementValue(out);
+		}
+	}
+
+	private void copyElementValue(DataOutputStream out) throws IOException {
+		int tag = u1();
+		out.writeByte(tag);
+		switch (tag) {
+		case 'e':
+			out.writeShort(mapU2());
+			out.writeShort(mapU2());
+			break;
+		case '@':
+			copyAnnotation(out);
+			break;
+		case '[':
+			int count = u2();
+			out.writeShort(count);
+			for (int i = 0; i < count; i++) {
+				copyElementValue(out);
+			}
+			break;
+		default:
+			// constant values and class literals
+			out.writeShort(mapU2());
+			break;
+		}
+	}
+
+	/**
+	 * copies a type annotation, only the targets outside of method bodies can
+	 * occur once the Code attributes are dropped
+	 */
+	private void copyTypeAnnotation(DataOutputStream out) throws IOException {
+		int targetType = u1();
+		out.writeByte(targetType);
+		switch (targetType) {
+		case 0x00:
+		case 0x01:
+		case 0x16:
+			out.writeByte(u1());
+			break;
+		case 0x10:
+		case 0x11:
+		case 0x12:
+		case 0x17:
+			out.writeShort(u2());
+			break;
+		case 0x13:
+		case 0x14:
+		case 0x15:
+			break;
+		default:
+			throw new IOException(String.format("unexpected type annotation target 0x%02x", targetType));
+		}
+		int pathLength = u1();
+		out.writeByte(pathLength);
+		for (int i = 0; i < pathLength; i++) {
+			out.writeShort(u2());
+		}
+		copyAnnotation(out);
+	}
+
+	private int mapU2() throws IOException {
+		return map(u2());
+	}
+
+	/**
+	 * @return index of the constant in the new pool, copied on first use
+	 */
+	private int map(int index) throws IOException {
+		if (index == 0) {
+			return 0;
+		}
+		if (mapConstants[index] == 0) {
+			mapConstants[index] = copyConstant(index);
+		}
+		return mapConstants[index];
+	}
+
+	private int copyConstant(int index) throws IOException {
+		int offset = reader.getConstantOffset(index);
+		int tag = reader.getConstantTag(index);
+		switch (tag) {
+		case CONSTANT_UTF8:
+			return append(offset, 3 + (in.getShort(offset + 1) & 0xFFFF), 1);
+		case CONSTANT_INTEGER:
+		case CONSTANT_FLOAT:
+			return append(offset, 5, 1);
+		case CONSTANT_LONG:
+		case CONSTANT_DOUBLE:
+			return append(offset, 9, 2);
+		case CONSTANT_CLASS:
+		case CONSTANT_STRING:
+		case CONSTANT_METHOD_TYPE:
+		case CONSTANT_MODULE:
+		case CONSTANT_PACKAGE:
+			int ref = map(in.getShort(offset + 1) & 0xFFFF);
+			pool.writeByte(tag);
+			pool.writeShort(ref);
+			return constantCount++;
+		case CONSTANT_FIELDREF:
+		case CONSTANT_METHODREF:
+		case CONSTANT_INTERFACE_METHODREF:
+		case CONSTANT_NAME_AND_TYPE:
+			int first = map(in.getShort(offset + 1) & 0xFFFF);
+			int second = map(in.getShort(offset + 3) & 0xFFFF);
+			pool.writeByte(tag);
+			pool.writeShort(first);
+			pool.writeShort(second);
+			return constantCount++;
+		case CONSTANT_METHOD_HANDLE:
+			int reference = map(in.getShort(offset + 2) & 0xFFFF);
+			pool.writeByte(tag);
+			pool.writeByte(in.get(offset + 1));
+			pool.writeShort(reference);
+			return constantCount++;
+		default:
+			// dynamic constants refer to the dropped BootstrapMethods attribute
+			throw new IOException(String.format("constant pool entry %d of type %d can not be stubbed", index, tag));
+		}
+	}
+
+	private int append(int offset, int length, int slots) throws IOException {
+		for (int i = 0; i < length; i++) {
+			pool.writeByte(in.get(offset + i));
+		}
+		int index = constantCount;
+		constantCount += slots;
+		return index;
+	}
+
+	private int u1() {
+		return in.get() & 0xFF;
+	}
+
+	private int u2() {
+		return in.getShort() & 0xFFFF;
+	}
+}
@@ -0,0 +1,104 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Content addressed store of extracted files shared by the workspaces of
+ * several JREs. Every distinct content is stored once below its SHA-256 hash
+ * and the workspace trees are materialised as hard links to the stored
+ * objects, so a file which is identical in another JRE costs a link instead
+ * of a copy. If the workspace is on another filesystem or hard links are not
+ * supported, the objects are copied. Targets are always replaced by a new link
+ * or file and never written through, as that would change the stored object
+ * and every tree linked to it.
+ */
+class ContentStore {
+
+	static final String OBJECTS_DIR = "objects";
+
+	private final Path objectsPath;
+	private final AtomicBoolean linksSupported = new AtomicBoolean(true);
+
+	ContentStore(Path storePath) throws IOException {
+		this.objectsPath = Files.createDirectories(storePath.resolve(OBJECTS_DIR));
+	}
+
+	/**
+	 * materialises the content with the given hash at the target, replacing an
+	 * existing target
+	 *
+	 * @return <code>true</code> if the target is a link to the stored object,
+	 *         <code>false</code> if it is a copy
+	 */
+	boolean materialise(String hash, ByteBuffer content, Path targetFile) throws IOException {
+		Path objectFile = store(hash, content);
+		if (Files.exists(targetFile) && Files.isSameFile(objectFile, targetFile)) {
+			// renaming a link onto a link of the same file is a no-op leaving the link behind
+			return true;
+		}
+		Path tempFile = ReportWriter.toTempFile(targetFile);
+		Files.deleteIfExists(tempFile);
+		boolean linked = linksSupported.get() && link(objectFile, tempFile);
+		if (!linked) {
+			Files.copy(objectFile, tempFile, REPLACE_EXISTING);
+		}
+		try {
+			ReportWriter.moveAtomically(tempFile, targetFile);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		return linked;
+	}
+
+	/**
+	 * @return path of the stored object, written if the store did not contain
+	 *         the content yet
+	 */
+	Path store(String hash, ByteBuffer content) throws IOException {
+		Path objectDir = objectsPath.resolve(hash.substring(0, 2));
+		Path objectFile = objectDir.resolve(hash);
+		if (Files.exists(objectFile) && Files.size(objectFile) == content.remaining()) {
+			return objectFile;
+		}
+		Files.createDirectories(objectDir);
+		// objects only appear complete, concurrent probes may store the same content
+		Path tempFile = Files.createTempFile(objectDir, "." + hash, ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, WRITE, TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = content.duplicate();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			ReportWriter.moveAtomically(tempFile, objectFile);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		return objectFile;
+	}
+
+	private boolean link(Path objectFile, Path linkFile) throws IOException {
+		try {
+			Files.createLink(linkFile, objectFile);
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			throw e;
+		} catch (UnsupportedOperationException | FileSystemException e) {
+			// e.g. a workspace on another device, the store falls back to copies for good
+			if (linksSupported.compareAndSet(true, false)) {
+				System.err.format("could not hard link %s - copying from the content store\n%s\n", linkFile, e);
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import io.klib.probe.java.ProbeMetrics.Counter;
+
+/**
+ * Builds the package dependency graph of a {@link JreImage} from the constant
+ * pools of its class files. Only the constant pool, the super types and the
+ * member descriptors are read from the buffers of the image, no class is
+ * loaded or decoded beyond that. Internal names are resolved to packages
+ * through a per thread table keyed by their bytes, so repeated references do
+ * not allocate. The packages are analysed in parallel.
+ */
+class DependencyAnalyzer {
+
+	static final String PACKAGE_DEPENDENCIES = "5_packageDependencies.txt";
+	static final String EXPORTED_TO_PRIVATE = "5_exportedToPrivateReferences.txt";
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	/**
+	 * references of the classes of one package to another package
+	 */
+	static final class Reference {
+		/** number of referencing classes */
+		int classes;
+		/** referenced by the super types or a member signature of an API class */
+		boolean api;
+		/** first referencing class by name */
+		String firstClass;
+	}
+
+	static final class PackageDependencies {
+		final String module;
+		final String packageName;
+		final boolean exported;
+		final Map<String, Reference> mapPackage2Reference = new TreeMap<>();
+
+		PackageDependencies(String module, String packageName, boolean exported) {
+			this.module = module;
+			this.packageName = packageName;
+			this.exported = exported;
+		}
+	}
+
+	private final int parallelism;
+	private final ForkJoinPool sharedPool;
+	private final ProbeMetrics metrics;
+	private final LongAdder classCount = new LongAdder();
+	private final ThreadLocal<PackageTable> packageTables = ThreadLocal.withInitial(PackageTable::new);
+
+	/**
+	 * @param metrics receives the number of analysed classes
+	 */
+	DependencyAnalyzer(int parallelism, ProbeMetrics metrics) {
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		this.sharedPool = null;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param sharedPool pool the classes are analysed in, it is not shut down
+	 */
+	DependencyAnalyzer(ForkJoinPool sharedPool, ProbeMetrics metrics) {
+		this.parallelism = sharedPool.getParallelism();
+		this.sharedPool = sharedPool;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return dependencies of all packages, sorted by module and package
+	 */
+	List<PackageDependencies> analyse(JreImage jreImage, PackageIndex packageIndex) throws IOException {
+		long startNanos = System.nanoTime();
+		List<String> modules = jreImage.getModules();
+		ForkJoinPool pool = sharedPool != null ? sharedPool : new ForkJoinPool(parallelism);
+		List<PackageDependencies> packages;
+		try {
+			packages = pool.submit(() -> modules.parallelStream()
+					.flatMap(m -> packageDirs(jreImage, m).entrySet().parallelStream()
+							.filter(e -> !e.getKey().isEmpty())
+							.map(e -> analysePackage(jreImage, packageIndex, m, e.getKey(), e.getValue())))
+					.filter(Objects::nonNull).collect(Collectors.toList())).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("dependency analysis of JRE interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException("dependency analysis of JRE failed", e.getCause());
+		} finally {
+			if (pool != sharedPool) {
+				pool.shutdown();
+			}
+		}
+		metrics.add(Counter.ANALYSED_CLASSES, classCount.sum());
+		packages.sort(Comparator.comparing((PackageDependencies p) -> p.module).thenComparing(p -> p.packageName));
+		System.out.format("analysed dependencies of %d classes in %d packages with parallelism %d in %d ms\n",
+				classCount.sum(), packages.size(), parallelism, (System.nanoTime() - startNanos) / 1_000_000);
+		return packages;
+	}
+
+	private static Map<String, List<String>> packageDirs(JreImage jreImage, String module) {
+		try {
+			return jreImage.getPackageDirs(module);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return dependencies of the package, <code>null</code> if it contains no
+	 *         class
+	 */
+	private PackageDependencies analysePackage(JreImage jreImage, PackageIndex packageIndex, String module,
+			String packageDir, List<String> files) {
+		String packageName = JreImage.toPackageName(packageDir);
+		PackageDependencies dependencies = new PackageDependencies(module, packageName,
+				packageIndex.isExported(module, packageName));
+		PackageTable table = packageTables.get();
+		ClassReferences references = new ClassReferences(table);
+		int classes = 0;
+		for (String file : files) {
+			if (!file.endsWith(CLASS_SUFFIX) || file.equals(JreImage.MODULE_INFO)) {
+				continue;
+			}
+			String className = packageDir + "/" + file.substring(0, file.length() - CLASS_SUFFIX.length());
+			try {
+				ClassFileReader reader = new ClassFileReader(jreImage.read(module, JreImage.toPath(packageDir, file)));
+				references.collect(reader, dependencies.exported && reader.isApi());
+			} catch (IOException e) {
+				System.err.format("could not analyse %s/%s\n%s\n", module, className, e);
+				continue;
+			}
+			classes++;
+			for (int i = 0; i < references.size; i++) {
+				String target = references.packages[i];
+				if (target.equals(packageName)) {
+					continue;
+				}
+				Reference reference = dependencies.mapPackage2Reference.computeIfAbsent(target,
+						t -> new Reference());
+				reference.classes++;
+				reference.api |= references.api[i];
+				if (reference.firstClass == null || className.compareTo(reference.firstClass) < 0) {
+					reference.firstClass = className;
+				}
+			}
+		}
+		classCount.add(classes);
+		return classes > 0 ? dependencies : null;
+	}
+
+	static void writePackageDependencies(Writer out, List<PackageDependencies> packages) throws IOException {
+		out.write("# package dependencies from the constant pools of all classes\n");
+		out.write("# <referenced package> <referencing classes>\n\n");
+		String module = null;
+		for (PackageDependencies p : packages) {
+			if (!p.module.equals(module)) {
+				module = p.module;
+				out.write("# module ");
+				out.write(module);
+				out.write("\n");
+			}
+			out.write(p.packageName);
+			out.write(p.exported ? " (exported)\n" : " (private)\n");
+			for (Map.Entry<String, Reference> e : p.mapPackage2Reference.entrySet()) {
+				out.write("    ");
+				out.write(e.getKey());
+				out.write(' ');
+				out.write(Integer.toString(e.getValue().classes));
+				out.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * references of exported packages to packages which are not exported by
+	 * any module; API references leak the private package into the signatures
+	 * of the exported classes
+	 */
+	static void writeExportedToPrivate(Writer out, List<PackageDependencies> packages, PackageIndex packageIndex)
+			throws IOException {
+		out.write("# references of exported packages to private packages\n");
+		out.write("# <private package> <module> <referencing classes> <first class> [api]\n\n");
+		for (PackageDependencies p : packages) {
+			if (!p.exported) {
+				continue;
+			}
+			boolean first = true;
+			for (Map.Entry<String, Reference> e : p.mapPackage2Reference.entrySet()) {
+				String target = e.getKey();
+				if (!packageIndex.contains(target) || packageIndex.isExported(target)) {
+					continue;
+				}
+				if (first) {
+					out.write(p.module);
+					out.write(' ');
+					out.write(p.packageName);
+					out.write("\n");
+					first = false;
+				}
+				Reference reference = e.getValue();
+				out.write(String.format("    %s %s %d %s%s\n", target, packageIndex.getModule(target),
+						reference.classes, reference.firstClass, reference.api ? " api" : ""));
+			}
+		}
+	}
+
+	/**
+	 * distinct packages referenced by one class, reused for all classes of a
+	 * package
+	 */
+	private static final class ClassReferences {
+		private final PackageTable table;
+		String[] packages = new String[32];
+		boolean[] api = new boolean[32];
+		int size;
+
+		ClassReferences(PackageTable table) {
+			this.table = table;
+		}
+
+		void collect(ClassFileReader reader, boolean apiClass) throws IOException {
+			size = 0;
+			ByteBuffer content = reader.getContent();
+			if (apiClass) {
+				// super types and API signatures first, so their packages carry the flag
+				if (reader.getSuperClassIndex() != 0) {
+					addClass(reader, reader.getSuperClassIndex(), true);
+				}
+				for (int index : reader.getInterfaceIndices()) {
+					addClass(reader, index, true);
+				}
+				for (int i = 0; i < reader.getMemberCount(); i++) {
+					if (isApi(reader.getMemberAccess(i))) {
+						addDescriptor(content, reader, reader.getMemberDescriptorIndex(i), true);
+					}
+				}
+			}
+			for (int i = 1; i < reader.getConstantCount(); i++) {
+				switch (reader.getConstantTag(i)) {
+				case ClassFileReader.CONSTANT_CLASS:
+					addClass(reader, i, false);
+					break;
+				case ClassFileReader.CONSTANT_NAME_AND_TYPE:
+					addDescriptor(content, reader, reader.getSecondConstantOperand(i), false);
+					break;
+				case ClassFileReader.CONSTANT_METHOD_TYPE:
+					addDescriptor(content, reader, reader.getConstantOperand(i), false);
+					break;
+				default:
+					break;
+				}
+			}
+			for (int i = 0; i < reader.getMemberCount(); i++) {
+				addDescriptor(content, reader, reader.getMemberDescriptorIndex(i), false);
+			}
+		}
+
+		private static boolean isApi(int access) {
+			return (access & (ClassFileReader.ACC_PUBLIC | ClassFileReader.ACC_PROTECTED)) != 0;
+		}
+
+		private void addClass(ClassFileReader reader, int classIndex, boolean apiReference) throws IOException {
+			int nameIndex = reader.getConstantOperand(classIndex);
+			ByteBuffer content = reader.getContent();
+			int offset = reader.getUtf8Offset(nameIndex);
+			int length = reader.getUtf8Length(nameIndex);
+			if (length > 0 && content.get(offset) == '[') {
+				addDescriptor(content, reader, nameIndex, apiReference);
+			} else {
+				addName(content, offset, offset + length, apiReference);
+			}
+		}
+
+		/**
+		 * adds the packages of all class types of a field or method descriptor
+		 */
+		private void addDescriptor(ByteBuffer content, ClassFileReader reader, int descriptorIndex,
+				boolean apiReference) throws IOException {
+			int offset = reader.getUtf8Offset(descriptorIndex);
+			int end = offset + reader.getUtf8Length(descriptorIndex);
+			for (int i = offset; i < end; i++) {
+				if (content.get(i) == 'L') {
+					int nameEnd = i + 1;
+					while (nameEnd < end && content.get(nameEnd) != ';') {
+						nameEnd++;
+					}
+					addName(content, i + 1, nameEnd, apiReference);
+					i = nameEnd;
+				}
+			}
+		}
+
+		private void addName(ByteBuffer content, int start, int end, boolean apiReference) {
+			int packageEnd = end - 1;
+			while (packageEnd >= start && content.get(packageEnd) != '/') {
+				packageEnd--;
+			}
+			if (packageEnd < start) {
+				// unnamed package
+				return;
+			}
+			String packageName = table.get(content, start, packageEnd);
+			for (int i = 0; i < size; i++) {
+				// the table returns one instance per package
+				if (packages[i] == packageName) {
+					api[i] |= apiReference;
+					return;
+				}
+			}
+			if (size == packages.length) {
+				packages = Arrays.copyOf(packages, size * 2);
+				api = Arrays.copyOf(api, size * 2);
+			}
+			packages[size] = packageName;
+			api[size] = apiReference;
+			size++;
+		}
+	}
+
+	/**
+	 * open addressing table of the package names seen by one thread, keyed by
+	 * the bytes of the internal name
+	 */
+	private static final class PackageTable {
+		private byte[][] keys = new byte[1024][];
+		private String[] names = new String[1024];
+		private int size;
+
+		String get(ByteBuffer content, int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + content.get(i);
+			}
+			int mask = keys.length - 1;
+			int slot = mix(hash) & mask;
+			while (keys[slot] != null) {
+				if (matches(keys[slot], content, start, end)) {
+					return names[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			byte[] key = new byte[end - start];
+			for (int i = 0; i < key.length; i++) {
+				key[i] = content.get(start + i);
+			}
+			String name = new String(key, StandardCharsets.UTF_8).replace('/', '.');
+			keys[slot] = key;
+			names[slot] = name;
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+			return name;
+		}
+
+		private static boolean matches(byte[] key, ByteBuffer content, int start, int end) {
+			if (key.length != end - start) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (key[i] != content.get(start + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int mix(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+
+		private void grow() {
+			byte[][] oldKeys = keys;
+			String[] oldNames = names;
+			keys = new byte[oldKeys.length * 2][];
+			names = new String[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int hash = 0;
+					for (byte b : oldKeys[i]) {
+						hash = 31 * hash + b;
+					}
+					int slot = mix(hash) & mask;
+					while (keys[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					names[slot] = oldNames[i];
+				}
+			}
+		}
+	}
+}
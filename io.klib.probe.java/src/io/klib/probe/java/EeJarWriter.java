@@ -0,0 +1,360 @@
+package io.klib.probe.java;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import io.klib.probe.java.ChangeSummary.Change;
+
+/**
+ * Streams the exported packages of a JRE directly into the ee.j2se bundle jar.
+ * Entries can be added concurrently. With parallel deflate every caller
+ * compresses its entry on its own thread, otherwise the entries are deflated
+ * one at a time. The deflated entries are kept in memory, about the size of
+ * the finished jar, and are written once on close sorted by package and file
+ * name, so the same content always gives the same jar. The jar is only
+ * written if its content digest differs from the one of the previous run and
+ * the jar was not aborted, it replaces the existing jar atomically.
+ * <p>
+ * zip64 is not supported, a jar is limited to 65535 entries and 4 GB.
+ */
+class EeJarWriter implements Closeable {
+
+	// fixed entry time for reproducible jars (1980-02-01 00:00)
+	private static final int DOS_TIME = 0;
+	private static final int DOS_DATE = (2 << 5) | 1;
+	private static final String META_INF_DIR = "META-INF/";
+	// entry count and offsets without zip64
+	static final int MAX_ENTRIES = 0xFFFF;
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+	private final Path jarFile;
+	private final Path tempFile;
+	private final String previousDigest;
+	private final boolean parallelDeflate;
+	private final Map<String, String> mapEntryHashes = new ConcurrentHashMap<>();
+	private String digest;
+	private Change change;
+	private volatile boolean aborted;
+	private final Set<String> dirEntries = new HashSet<>();
+	private final LongAdder entryCount = new LongAdder();
+	private final LongAdder uncompressedBytes = new LongAdder();
+	private final ThreadLocal<Deflater> deflater = ThreadLocal
+			.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+	private final RawZipOutput rawOut;
+
+	/**
+	 * @param previousDigest content digest of the existing jar, <code>null</code> if unknown
+	 */
+	EeJarWriter(Path jarFile, Manifest manifest, boolean parallelDeflate, String previousDigest)
+			throws IOException {
+		this.jarFile = jarFile;
+		this.previousDigest = previousDigest;
+		this.parallelDeflate = parallelDeflate;
+		Files.createDirectories(jarFile.toAbsolutePath().getParent());
+		tempFile = ReportWriter.toTempFile(jarFile);
+		ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+		manifest.write(manifestBytes);
+		rawOut = new RawZipOutput();
+		addDir(META_INF_DIR);
+		byte[] manifestContent = manifestBytes.toByteArray();
+		add(JarFile.MANIFEST_NAME, ByteBuffer.wrap(manifestContent),
+				ExtractionCache.toHex(ExtractionCache.newDigest().digest(manifestContent)));
+	}
+
+	/**
+	 * @param stubClasses the jar contains API-only stubs of the classes
+	 */
+	static Manifest createManifest(String version, Collection<String> exportedPackages, boolean stubClasses) {
+		Manifest manifest = new Manifest();
+		Attributes main = manifest.getMainAttributes();
+		main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		main.putValue("Bundle-ManifestVersion", "2");
+		main.putValue("Bundle-SymbolicName", "ee.j2se");
+		main.putValue("Bundle-Version", version);
+		main.putValue("Bundle-Description", "Contains the Java SE " + version + " execution environment "
+				+ (stubClasses ? "stubbed classes" : "classes"));
+		main.putValue("Import-Package", "");
+		StringJoiner exports = new StringJoiner(",");
+		exportedPackages.stream().sorted().distinct().forEach(p -> exports.add(p + ";version=0.0.0"));
+		main.putValue("Export-Package", exports.toString());
+		main.putValue("Provide-Capability",
+				"osgi.ee;osgi.ee=\"JavaSE\";version:List<Version>=\"" + eeVersions(version) + "\"");
+		return manifest;
+	}
+
+	private static String eeVersions(String version) {
+		int feature;
+		try {
+			feature = Integer.parseInt(version.split("\\.")[0]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("unsupported JRE version " + version, e);
+		}
+		StringJoiner versions = new StringJoiner(", ");
+		for (int i = 0; i <= 8; i++) {
+			versions.add("1." + i);
+		}
+		for (int i = 9; i <= feature; i++) {
+			versions.add(String.valueOf(i));
+		}
+		return versions.toString();
+	}
+
+	/**
+	 * adds a file of the given package directory, the directory entries are
+	 * created on first use
+	 *
+	 * @throws IOException if the jar exceeds the zip limits
+	 */
+	void add(String packageDir, String fileName, ByteBuffer content, String hash) throws IOException {
+		String dir = packageDir.isEmpty() ? "" : packageDir + "/";
+		if (!dir.isEmpty()) {
+			addDir(dir);
+		}
+		add(dir + fileName, content, hash);
+	}
+
+	private void addDir(String dir) throws IOException {
+		int parentEnd = dir.lastIndexOf('/', dir.length() - 2);
+		if (parentEnd > 0) {
+			addDir(dir.substring(0, parentEnd + 1));
+		}
+		synchronized (dirEntries) {
+			if (!dirEntries.add(dir)) {
+				return;
+			}
+		}
+		add(dir, ByteBuffer.allocate(0), "");
+	}
+
+	private void add(String name, ByteBuffer content, String hash) throws IOException {
+		mapEntryHashes.put(name, hash);
+		int size = content.remaining();
+		entryCount.increment();
+		uncompressedBytes.add(size);
+		CRC32 crc = new CRC32();
+		crc.update(content.duplicate());
+		if (parallelDeflate) {
+			rawOut.write(name, crc.getValue(), size, deflate(content.duplicate(), size));
+		} else {
+			synchronized (rawOut) {
+				rawOut.write(name, crc.getValue(), size, deflate(content.duplicate(), size));
+			}
+		}
+	}
+
+	private byte[] deflate(ByteBuffer content, int size) {
+		Deflater d = deflater.get();
+		d.reset();
+		d.setInput(content);
+		d.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, size / 2));
+		byte[] buffer = new byte[8192];
+		while (!d.finished()) {
+			int len = d.deflate(buffer);
+			out.write(buffer, 0, len);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return digest over name and content hash of all entries, independent of
+	 *         the order the entries were written in
+	 */
+	String getDigest() {
+		return digest;
+	}
+
+	Change getChange() {
+		return change;
+	}
+
+	/**
+	 * discards the jar on {@link #close()}, the existing jar is kept
+	 */
+	void abort() {
+		aborted = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (aborted) {
+				System.err.format("discarded incomplete %s\n", jarFile);
+				return;
+			}
+			digest = computeDigest();
+			if (Files.exists(jarFile) && digest.equals(previousDigest)) {
+				change = Change.UNCHANGED;
+				System.out.format("kept %s - content of %d entries is unchanged\n", jarFile, entryCount.sum());
+				return;
+			}
+			change = Files.exists(jarFile) ? Change.UPDATED : Change.CREATED;
+			rawOut.writeSorted(tempFile);
+			ReportWriter.moveAtomically(tempFile, jarFile);
+			System.out.format("wrote %d entries (%.1f MB uncompressed, %.1f MB jar) into %s\n", entryCount.sum(),
+					uncompressedBytes.sum() / (1024d * 1024d), Files.size(jarFile) / (1024d * 1024d), jarFile);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private String computeDigest() {
+		MessageDigest md = ExtractionCache.newDigest();
+		new TreeMap<>(mapEntryHashes).forEach((name, hash) -> {
+			md.update(name.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) '\t');
+			md.update(hash.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) '\n');
+		});
+		return ExtractionCache.toHex(md.digest());
+	}
+
+	/**
+	 * minimal zip writer for entries which are already deflated, the records
+	 * are collected in the order of their arrival and written sorted
+	 */
+	private static class RawZipOutput {
+		private final List<Record> records = new ArrayList<>();
+		private long length;
+
+		synchronized void write(String name, long crc, int size, byte[] deflated) throws IOException {
+			if (records.size() >= MAX_ENTRIES) {
+				throw new IOException(
+						String.format("jar exceeds %d entries - zip64 is not supported - %s", MAX_ENTRIES, name));
+			}
+			Record record = new Record(name, name.getBytes(StandardCharsets.UTF_8), crc, size, deflated);
+			// local record and central directory record
+			long recordLength = record.length() + 46L + record.nameBytes.length;
+			if (length + recordLength > MAX_SIZE) {
+				throw new IOException("jar exceeds 4 GB - zip64 is not supported - " + name);
+			}
+			records.add(record);
+			length += recordLength;
+		}
+
+		synchronized void writeSorted(Path jarFile) throws IOException {
+			records.sort(Record.ORDER);
+			ByteArrayOutputStream central = new ByteArrayOutputStream();
+			long jarOffset = 0;
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(jarFile), 1 << 16)) {
+				for (Record record : records) {
+					// local file header
+					writeInt(out, 0x04034b50);
+					writeShort(out, 20);
+					writeShort(out, 0x0800);
+					writeShort(out, ZipEntry.DEFLATED);
+					writeShort(out, DOS_TIME);
+					writeShort(out, DOS_DATE);
+					writeInt(out, (int) record.crc);
+					writeInt(out, record.deflated.length);
+					writeInt(out, record.size);
+					writeShort(out, record.nameBytes.length);
+					writeShort(out, 0);
+					out.write(record.nameBytes);
+					out.write(record.deflated);
+					// central directory record
+					writeInt(central, 0x02014b50);
+					writeShort(central, 20);
+					writeShort(central, 20);
+					writeShort(central, 0x0800);
+					writeShort(central, ZipEntry.DEFLATED);
+					writeShort(central, DOS_TIME);
+					writeShort(central, DOS_DATE);
+					writeInt(central, (int) record.crc);
+					writeInt(central, record.deflated.length);
+					writeInt(central, record.size);
+					writeShort(central, record.nameBytes.length);
+					writeShort(central, 0);
+					writeShort(central, 0);
+					writeShort(central, 0);
+					writeShort(central, 0);
+					writeInt(central, 0);
+					writeInt(central, (int) jarOffset);
+					central.write(record.nameBytes);
+					jarOffset += record.length();
+				}
+				central.writeTo(out);
+				// end of central directory record
+				writeInt(out, 0x06054b50);
+				writeShort(out, 0);
+				writeShort(out, 0);
+				writeShort(out, records.size());
+				writeShort(out, records.size());
+				writeInt(out, central.size());
+				writeInt(out, (int) jarOffset);
+				writeShort(out, 0);
+			}
+		}
+
+		private static void writeShort(OutputStream out, int v) throws IOException {
+			out.write(v & 0xFF);
+			out.write((v >>> 8) & 0xFF);
+		}
+
+		private static void writeInt(OutputStream out, int v) throws IOException {
+			writeShort(out, v & 0xFFFF);
+			writeShort(out, (v >>> 16) & 0xFFFF);
+		}
+	}
+
+	/**
+	 * deflated entry with the fields of its local header
+	 */
+	private static final class Record {
+		// the manifest leads the jar, the entries follow by package and file name
+		static final Comparator<Record> ORDER = Comparator.comparingInt((Record r) -> r.rank)
+				.thenComparing(r -> r.packageDir).thenComparing(r -> r.fileName);
+
+		final byte[] nameBytes;
+		final long crc;
+		final int size;
+		final byte[] deflated;
+		final int rank;
+		final String packageDir;
+		final String fileName;
+
+		Record(String name, byte[] nameBytes, long crc, int size, byte[] deflated) {
+			this.nameBytes = nameBytes;
+			this.crc = crc;
+			this.size = size;
+			this.deflated = deflated;
+			this.rank = name.equals(META_INF_DIR) ? 0 : name.equals(JarFile.MANIFEST_NAME) ? 1 : 2;
+			int slash = name.lastIndexOf('/', name.length() - 2);
+			this.packageDir = slash < 0 ? "" : name.substring(0, slash);
+			this.fileName = name.substring(slash + 1);
+		}
+
+		/**
+		 * @return length of the local header and the deflated content
+		 */
+		long length() {
+			return 30L + nameBytes.length + deflated.length;
+		}
+	}
+}
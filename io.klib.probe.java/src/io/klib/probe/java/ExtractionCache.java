@@ -0,0 +1,379 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache describing the content extracted into the workspace. It is
+ * keyed by the identity of the JRE (hash of its <code>release</code> file and
+ * <code>lib/modules</code> image) and keeps a manifest per module with size and
+ * hash of every entry, so a re-run of the same JRE is a no-op and an update of
+ * the JRE only rewrites the changed files. A completed extraction is sealed by
+ * a marker with the identity of the JRE, an interrupted one is resumed from
+ * its {@link ExtractionJournal}.
+ */
+class ExtractionCache {
+
+	private static final String STATE_FILE = "jre.properties";
+	private static final String COMPLETE_FILE = "extraction.complete";
+	private static final String KEY_IDENTITY = "identity";
+	private static final String KEY_TARGETS = "targets";
+	private static final String KEY_MODULES_SIZE = "modules.size";
+	private static final String KEY_MODULES_MODIFIED = "modules.lastModified";
+	private static final String KEY_MODULES_HASH = "modules.hash";
+	private static final String KEY_DIGEST_PREFIX = "digest.";
+	private static final String MANIFEST_SUFFIX = ".manifest";
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	static final class Entry {
+		final long size;
+		final String hash;
+		final boolean exported;
+		// hash of the exported content, differs from the hash of a stubbed class
+		final String exportHash;
+
+		Entry(long size, String hash, boolean exported) {
+			this(size, hash, exported, hash);
+		}
+
+		Entry(long size, String hash, boolean exported, String exportHash) {
+			this.size = size;
+			this.hash = hash;
+			this.exported = exported;
+			this.exportHash = exportHash;
+		}
+	}
+
+	private final Path cachePath;
+	private final Properties previousState = new Properties();
+	private final Map<String, Map<String, Entry>> previousManifests = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, Entry>> manifests = new ConcurrentHashMap<>();
+	private final Set<String> previousTargets;
+	private final String completedIdentity;
+	private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(ExtractionCache::newDigest);
+	private String identity;
+	private Path modulesFile;
+
+	ExtractionCache(Path cachePath) throws IOException {
+		this.cachePath = Files.createDirectories(cachePath);
+		Path stateFile = cachePath.resolve(STATE_FILE);
+		if (Files.exists(stateFile)) {
+			try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+				previousState.load(reader);
+			}
+		}
+		previousTargets = splitTargets(previousState.getProperty(KEY_TARGETS, ""));
+		Path completeFile = cachePath.resolve(COMPLETE_FILE);
+		completedIdentity = Files.exists(completeFile)
+				? new String(Files.readAllBytes(completeFile), StandardCharsets.UTF_8).trim()
+				: null;
+	}
+
+	/**
+	 * computes the identity of the JRE, the hash of <code>lib/modules</code> is
+	 * reused from the last run as long as size and modification time match
+	 */
+	String computeIdentity(Path jreHome) throws IOException {
+		MessageDigest md = newDigest();
+		Path releaseFile = jreHome.resolve("release");
+		if (Files.exists(releaseFile)) {
+			md.update(Files.readAllBytes(releaseFile));
+		}
+		modulesFile = jreHome.resolve("lib").resolve("modules");
+		if (Files.exists(modulesFile)) {
+			String size = String.valueOf(Files.size(modulesFile));
+			String modified = String.valueOf(Files.getLastModifiedTime(modulesFile).toMillis());
+			String modulesHash;
+			if (size.equals(previousState.getProperty(KEY_MODULES_SIZE))
+					&& modified.equals(previousState.getProperty(KEY_MODULES_MODIFIED))
+					&& previousState.containsKey(KEY_MODULES_HASH)) {
+				modulesHash = previousState.getProperty(KEY_MODULES_HASH);
+			} else {
+				modulesHash = hashFile(modulesFile);
+			}
+			md.update(modulesHash.getBytes(StandardCharsets.UTF_8));
+			previousState.setProperty(KEY_MODULES_SIZE, size);
+			previousState.setProperty(KEY_MODULES_MODIFIED, modified);
+			previousState.setProperty(KEY_MODULES_HASH, modulesHash);
+		} else if (Files.isDirectory(jreHome.resolve(JreProbe.EXPLODED_MODULES_DIR))) {
+			md.update(stampTree(jreHome.resolve(JreProbe.EXPLODED_MODULES_DIR)));
+		}
+		identity = toHex(md.digest());
+		return identity;
+	}
+
+	/**
+	 * @return digest of path, size and modification time of all files of an
+	 *         exploded image, cheaper than hashing their content
+	 */
+	private static byte[] stampTree(Path root) throws IOException {
+		MessageDigest md = newDigest();
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(root)) {
+			files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			md.update(String.format("%s/%d/%d\n", root.relativize(file), Files.size(file),
+					Files.getLastModifiedTime(file).toMillis()).getBytes(StandardCharsets.UTF_8));
+		}
+		return md.digest();
+	}
+
+	/**
+	 * @param targetPaths trees and files of the targets, which must still exist
+	 *                    and trees must not be empty
+	 * @return true if the last extraction was sealed as complete, was done for
+	 *         the same JRE and produced all given targets
+	 */
+	boolean isUpToDate(Set<String> targets, List<Path> targetPaths) throws IOException {
+		if (identity == null || !identity.equals(completedIdentity)
+				|| !identity.equals(previousState.getProperty(KEY_IDENTITY)) || !previousTargets.containsAll(targets)) {
+			return false;
+		}
+		for (Path targetPath : targetPaths) {
+			if (!Files.isDirectory(targetPath)) {
+				if (!Files.exists(targetPath)) {
+					return false;
+				}
+				continue;
+			}
+			try (Stream<Path> files = Files.list(targetPath)) {
+				if (files.findAny().isEmpty()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * opens the journal of this extraction, which continues the journal of an
+	 * interrupted extraction of the same JRE and targets
+	 */
+	ExtractionJournal openJournal(Set<String> targets) throws IOException {
+		return ExtractionJournal.open(cachePath, identity, targets);
+	}
+
+	boolean hasTarget(String target) {
+		return previousTargets.contains(target);
+	}
+
+	/**
+	 * loads the module manifests of the previous extraction, which become the
+	 * base of the incremental extraction
+	 */
+	void loadManifests() throws IOException {
+		try (Stream<Path> files = Files.list(cachePath)) {
+			for (Path manifestFile : files.filter(f -> f.getFileName().toString().endsWith(MANIFEST_SUFFIX))
+					.collect(Collectors.toList())) {
+				String module = manifestFile.getFileName().toString().replace(MANIFEST_SUFFIX, "");
+				Map<String, Entry> entries = new ConcurrentHashMap<>();
+				for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+					String[] columns = line.split("\t");
+					// manifests written before the export hash have four columns
+					if (columns.length == 4 || columns.length == 5) {
+						entries.put(columns[0], new Entry(Long.parseLong(columns[1]), columns[2],
+								"1".equals(columns[3]), columns.length == 5 ? columns[4] : columns[2]));
+					}
+				}
+				previousManifests.put(module, entries);
+			}
+		}
+	}
+
+	String hash(ByteBuffer content) {
+		MessageDigest md = digest.get();
+		md.reset();
+		md.update(content);
+		return toHex(md.digest());
+	}
+
+	Entry getPrevious(String module, String path) {
+		return previousManifests.getOrDefault(module, Collections.emptyMap()).get(path);
+	}
+
+	/**
+	 * @return entry recorded by this extraction, <code>null</code> if the file
+	 *         does not exist anymore
+	 */
+	Entry getCurrent(String module, String path) {
+		return manifests.getOrDefault(module, Collections.emptyMap()).get(path);
+	}
+
+	void record(String module, String path, Entry entry) {
+		manifests.computeIfAbsent(module, m -> new ConcurrentHashMap<>()).put(path, entry);
+	}
+
+	/**
+	 * @return module to entries of the previous extraction which do not exist
+	 *         anymore or are no longer exported (exported flag of the previous
+	 *         entry)
+	 */
+	Map<String, Map<String, Entry>> getRemovedEntries() {
+		Map<String, Map<String, Entry>> removed = new ConcurrentHashMap<>();
+		previousManifests.forEach((module, entries) -> {
+			Map<String, Entry> current = manifests.getOrDefault(module, Collections.emptyMap());
+			entries.forEach((path, entry) -> {
+				Entry currentEntry = current.get(path);
+				if (currentEntry == null || (entry.exported && !currentEntry.exported)) {
+					removed.computeIfAbsent(module, m -> new ConcurrentHashMap<>()).put(path, entry);
+				}
+			});
+		});
+		return removed;
+	}
+
+	/**
+	 * @return paths exported by any module of this extraction
+	 */
+	Set<String> getExportedPaths() {
+		return exportedEntries(manifests).keySet();
+	}
+
+	/**
+	 * @return digest of the flat export tree, over path and written content of
+	 *         all exported entries of this extraction
+	 */
+	String computeExportDigest() {
+		MessageDigest md = newDigest();
+		manifests.values().stream().flatMap(m -> m.entrySet().stream()).filter(e -> e.getValue().exported)
+				.sorted(Map.Entry.comparingByKey()).forEach(e -> {
+					md.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+					md.update((byte) '\t');
+					md.update(e.getValue().exportHash.getBytes(StandardCharsets.UTF_8));
+					md.update((byte) '\n');
+				});
+		return toHex(md.digest());
+	}
+
+	/**
+	 * @return added, updated and removed exported entries compared to the
+	 *         previous extraction
+	 */
+	String describeExportChanges() {
+		Map<String, Entry> previous = exportedEntries(previousManifests);
+		Map<String, Entry> current = exportedEntries(manifests);
+		long added = current.keySet().stream().filter(p -> !previous.containsKey(p)).count();
+		long updated = current.entrySet().stream().filter(e -> previous.containsKey(e.getKey()))
+				.filter(e -> !previous.get(e.getKey()).exportHash.equals(e.getValue().exportHash)).count();
+		long removed = previous.keySet().stream().filter(p -> !current.containsKey(p)).count();
+		return String.format("%d added, %d updated, %d removed", added, updated, removed);
+	}
+
+	private static Map<String, Entry> exportedEntries(Map<String, Map<String, Entry>> manifests) {
+		return manifests.values().stream().flatMap(m -> m.entrySet().stream()).filter(e -> e.getValue().exported)
+				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e0, e1) -> e0));
+	}
+
+	/**
+	 * @return digest of the given artefact as of the last completed run,
+	 *         <code>null</code> if unknown
+	 */
+	String getDigest(String artefact) {
+		return previousState.getProperty(KEY_DIGEST_PREFIX + artefact);
+	}
+
+	/**
+	 * stores the digest of the given artefact, persisted by
+	 * {@link #commit(Set)}
+	 */
+	void setDigest(String artefact, String digest) {
+		previousState.setProperty(KEY_DIGEST_PREFIX + artefact, digest);
+	}
+
+	/**
+	 * persists the module manifests and the identity, then seals the
+	 * extraction by the completion marker and drops its journal. Every file
+	 * is replaced atomically, so a crash leaves the previous or the new state.
+	 */
+	void commit(Set<String> targets) throws IOException {
+		try (Stream<Path> files = Files.list(cachePath)) {
+			for (Path manifestFile : files.filter(f -> f.getFileName().toString().endsWith(MANIFEST_SUFFIX))
+					.filter(f -> !manifests.containsKey(f.getFileName().toString().replace(MANIFEST_SUFFIX, "")))
+					.collect(Collectors.toList())) {
+				Files.delete(manifestFile);
+			}
+		}
+		for (Map.Entry<String, Map<String, Entry>> module : manifests.entrySet()) {
+			ReportWriter.write(cachePath.resolve(module.getKey() + MANIFEST_SUFFIX), out -> {
+				for (Map.Entry<String, Entry> e : module.getValue().entrySet().stream()
+						.sorted(Map.Entry.comparingByKey()).collect(Collectors.toList())) {
+					out.write(String.join("\t", e.getKey(), String.valueOf(e.getValue().size), e.getValue().hash,
+							e.getValue().exported ? "1" : "0", e.getValue().exportHash));
+					out.write("\n");
+				}
+			});
+		}
+		previousState.setProperty(KEY_IDENTITY, identity);
+		previousState.setProperty(KEY_TARGETS, String.join(",", targets));
+		storeState("extraction cache of " + modulesFile);
+		ReportWriter.write(cachePath.resolve(COMPLETE_FILE), out -> out.write(identity + "\n"));
+		ExtractionJournal.delete(cachePath);
+	}
+
+	/**
+	 * removes the completion marker and the identity so an interrupted
+	 * extraction is never taken as up to date
+	 */
+	void invalidate() throws IOException {
+		Files.deleteIfExists(cachePath.resolve(COMPLETE_FILE));
+		previousState.remove(KEY_IDENTITY);
+		storeState("extraction in progress");
+	}
+
+	private void storeState(String comment) throws IOException {
+		ReportWriter.write(cachePath.resolve(STATE_FILE), out -> previousState.store(out, comment));
+	}
+
+	private static Set<String> splitTargets(String targets) {
+		return targets.isEmpty() ? Collections.emptySet()
+				: new LinkedHashSet<>(Arrays.asList(targets.split(",")));
+	}
+
+	static String hashFile(Path file) throws IOException {
+		MessageDigest md = newDigest();
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = Files.newInputStream(file)) {
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				md.update(buffer, 0, len);
+			}
+		}
+		return toHex(md.digest());
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+}
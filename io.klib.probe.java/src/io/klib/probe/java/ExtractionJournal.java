@@ -0,0 +1,198 @@
+package io.klib.probe.java;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.klib.probe.java.ExtractionCache.Entry;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only journal of the packages and modules of an extraction in
+ * progress. Every package is appended as one block of its entries followed by
+ * its completion record, once all its files were moved into place. A journal
+ * written for the same JRE identity and targets is resumed, the completed
+ * packages are taken from it instead of being extracted again. A block torn
+ * by a crash lacks its completion record and is ignored. The journal is
+ * deleted when the extraction is sealed by {@link ExtractionCache#commit(Set)}.
+ */
+class ExtractionJournal implements Closeable {
+
+	static final String FILE_NAME = "extraction.journal";
+
+	private static final String RECORD_HEADER = "H";
+	private static final String RECORD_ENTRY = "E";
+	private static final String RECORD_PACKAGE = "P";
+	private static final String RECORD_MODULE = "M";
+
+	private final Map<String, Map<String, Map<String, Entry>>> mapModulePackages = new ConcurrentHashMap<>();
+	private final Set<String> completedModules = ConcurrentHashMap.newKeySet();
+	private final boolean resumed;
+	private final int resumedPackageCount;
+	private final FileChannel channel;
+
+	private ExtractionJournal(Path journalFile, String header, boolean resume) throws IOException {
+		int packages = 0;
+		if (resume) {
+			boolean torn = !endsWithLineBreak(journalFile);
+			packages = read(journalFile, torn);
+			channel = FileChannel.open(journalFile, WRITE, APPEND);
+			if (torn) {
+				// terminates the torn line, so it does not merge with the next record
+				append("\n");
+			}
+		} else {
+			channel = FileChannel.open(journalFile, CREATE, TRUNCATE_EXISTING, WRITE);
+			append(header + "\n");
+		}
+		resumed = resume;
+		resumedPackageCount = packages;
+	}
+
+	/**
+	 * opens the journal of the cache directory, which is resumed if it was
+	 * written for the same JRE and targets and started anew otherwise
+	 */
+	static ExtractionJournal open(Path cachePath, String identity, Set<String> targets) throws IOException {
+		Path journalFile = cachePath.resolve(FILE_NAME);
+		String header = String.join("\t", RECORD_HEADER, identity, String.join(",", targets));
+		boolean resume = false;
+		if (Files.exists(journalFile)) {
+			try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+				resume = header.equals(reader.readLine());
+			}
+		}
+		return new ExtractionJournal(journalFile, header, resume);
+	}
+
+	static void delete(Path cachePath) throws IOException {
+		Files.deleteIfExists(cachePath.resolve(FILE_NAME));
+	}
+
+	/**
+	 * @return number of completed packages
+	 */
+	private int read(Path journalFile, boolean torn) throws IOException {
+		List<String> lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+		List<String[]> pendingEntries = new ArrayList<>();
+		int packages = 0;
+		int completeLines = torn ? lines.size() - 1 : lines.size();
+		for (int i = 1; i < completeLines; i++) {
+			String[] columns = lines.get(i).split("\t", -1);
+			// journals written before the export hash have six columns
+			if (columns[0].equals(RECORD_ENTRY) && (columns.length == 6 || columns.length == 7)) {
+				pendingEntries.add(columns);
+			} else if (columns[0].equals(RECORD_PACKAGE) && columns.length == 3) {
+				Map<String, Entry> entries = new LinkedHashMap<>();
+				for (String[] entry : pendingEntries) {
+					// entries of a torn block of another package may precede the block
+					if (entry[1].equals(columns[1]) && toPackageDir(entry[2]).equals(columns[2])) {
+						entries.put(entry[2], new Entry(Long.parseLong(entry[3]), entry[4], "1".equals(entry[5]),
+								entry.length == 7 ? entry[6] : entry[4]));
+					}
+				}
+				mapModulePackages.computeIfAbsent(columns[1], m -> new ConcurrentHashMap<>()).put(columns[2],
+						entries);
+				pendingEntries.clear();
+				packages++;
+			} else if (columns[0].equals(RECORD_MODULE) && columns.length == 2) {
+				completedModules.add(columns[1]);
+			} else {
+				// entries of a torn block
+				pendingEntries.clear();
+			}
+		}
+		return packages;
+	}
+
+	private static String toPackageDir(String path) {
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? "" : path.substring(0, slash);
+	}
+
+	private static boolean endsWithLineBreak(Path journalFile) throws IOException {
+		try (FileChannel in = FileChannel.open(journalFile, READ)) {
+			ByteBuffer last = ByteBuffer.allocate(1);
+			return in.size() > 0 && in.read(last, in.size() - 1) == 1 && last.get(0) == '\n';
+		}
+	}
+
+	/**
+	 * @return whether the journal continues an interrupted extraction
+	 */
+	boolean isResumed() {
+		return resumed;
+	}
+
+	/**
+	 * @return number of packages completed by the interrupted extraction
+	 */
+	int getResumedPackageCount() {
+		return resumedPackageCount;
+	}
+
+	boolean isModuleComplete(String module) {
+		return completedModules.contains(module);
+	}
+
+	/**
+	 * @return package directory to path and entry of its files, of all
+	 *         completed packages of the module
+	 */
+	Map<String, Map<String, Entry>> getCompletedPackages(String module) {
+		return mapModulePackages.getOrDefault(module, Collections.emptyMap());
+	}
+
+	/**
+	 * @return path to entry of the files of the completed package,
+	 *         <code>null</code> if the package is not complete
+	 */
+	Map<String, Entry> getCompletedPackage(String module, String packageDir) {
+		return getCompletedPackages(module).get(packageDir);
+	}
+
+	/**
+	 * appends the package with its entries as one block, all its files must
+	 * be in place
+	 */
+	void completePackage(String module, String packageDir, Map<String, Entry> entries) throws IOException {
+		StringBuilder block = new StringBuilder(entries.size() * 120);
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			block.append(RECORD_ENTRY).append('\t').append(module).append('\t').append(e.getKey()).append('\t')
+					.append(e.getValue().size).append('\t').append(e.getValue().hash).append('\t')
+					.append(e.getValue().exported ? '1' : '0').append('\t').append(e.getValue().exportHash)
+					.append('\n');
+		}
+		block.append(RECORD_PACKAGE).append('\t').append(module).append('\t').append(packageDir).append('\n');
+		append(block.toString());
+	}
+
+	void completeModule(String module) throws IOException {
+		append(RECORD_MODULE + "\t" + module + "\n");
+	}
+
+	private synchronized void append(String records) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,84 @@
+package io.klib.probe.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import io.klib.probe.java.api.JreAnalysis;
+
+/**
+ * {@link JreAnalysis} answering all queries from the memory mapped
+ * {@link ProbeIndex} of the JRE.
+ */
+final class IndexedJreAnalysis implements JreAnalysis, Closeable {
+
+	private final Path jrePath;
+	private final String stamp;
+	private final ProbeIndex index;
+
+	/**
+	 * @param stamp size and modification time of the JRE when it was analysed
+	 */
+	IndexedJreAnalysis(Path jrePath, String stamp, ProbeIndex index) {
+		this.jrePath = jrePath;
+		this.stamp = stamp;
+		this.index = index;
+	}
+
+	String getStamp() {
+		return stamp;
+	}
+
+	@Override
+	public Path getJrePath() {
+		return jrePath;
+	}
+
+	@Override
+	public String getVersion() {
+		return index.getJreVersion();
+	}
+
+	@Override
+	public List<String> getModules() {
+		return index.getModules();
+	}
+
+	@Override
+	public List<String> getExportedPackages() {
+		return index.getExportedPackages();
+	}
+
+	@Override
+	public Optional<String> getModuleOfPackage(String packageName) {
+		return index.getModuleOfPackage(packageName);
+	}
+
+	@Override
+	public Optional<String> getExportingModule(String packageName) {
+		return index.getExportingModule(packageName);
+	}
+
+	@Override
+	public Optional<String> getModuleOfClass(String className) {
+		return index.getModuleOfClass(className);
+	}
+
+	@Override
+	public boolean isClassExported(String className) {
+		return index.isClassExported(className);
+	}
+
+	@Override
+	public void close() throws IOException {
+		index.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s - %d modules, %d packages, %d exported, %d classes", jrePath, getVersion(),
+				index.getModuleCount(), index.getPackageCount(), getExportedPackages().size(), index.getClassCount());
+	}
+}
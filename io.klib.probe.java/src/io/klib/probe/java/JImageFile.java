@@ -0,0 +1,280 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link JreImage} reading the <code>lib/modules</code> jimage file of a JRE
+ * directly. The file is memory mapped, header, redirect, offset and location
+ * tables are parsed here and uncompressed resources are handed out as zero-copy
+ * slices of the mapping. Only the "zip" decompressor is supported, images
+ * using other compressions are rejected on open.
+ */
+class JImageFile implements JreImage {
+
+	private static final int MAGIC = 0xCAFEDADA;
+	private static final int MAJOR_VERSION = 1;
+	private static final int HEADER_SLOTS = 7;
+	private static final int HASH_MULTIPLIER = 0x01000193;
+	private static final int POSITIVE_MASK = 0x7FFFFFFF;
+
+	private static final int COMPRESSED_MAGIC = 0xCAFEFAFA;
+	private static final int COMPRESSED_HEADER_SIZE = 29;
+	private static final String ZIP_DECOMPRESSOR = "zip";
+	// jimage index entries of the jrt filesystem directories /modules and /packages
+	private static final Set<String> NON_MODULES = Set.of("modules", "packages");
+
+	private static final int ATTRIBUTE_END = 0;
+	private static final int ATTRIBUTE_MODULE = 1;
+	private static final int ATTRIBUTE_PARENT = 2;
+	private static final int ATTRIBUTE_BASE = 3;
+	private static final int ATTRIBUTE_EXTENSION = 4;
+	private static final int ATTRIBUTE_OFFSET = 5;
+	private static final int ATTRIBUTE_COMPRESSED = 6;
+	private static final int ATTRIBUTE_UNCOMPRESSED = 7;
+	private static final int ATTRIBUTE_COUNT = 8;
+
+	private final Path imageFile;
+	private final ByteBuffer image;
+	private final ByteOrder byteOrder;
+	private final int tableLength;
+	private final int indexSize;
+	private final IntBuffer redirect;
+	private final IntBuffer offsets;
+	private final ByteBuffer locations;
+	private final ByteBuffer strings;
+	private final Map<String, Map<String, List<String>>> mapModulePackageDirs;
+
+	private JImageFile(Path imageFile, ByteBuffer image) throws IOException {
+		this.imageFile = imageFile;
+		this.image = image;
+		this.byteOrder = detectByteOrder(image);
+		IntBuffer header = image.duplicate().order(byteOrder).asIntBuffer();
+		int version = header.get(1);
+		if (version >>> 16 != MAJOR_VERSION) {
+			throw new IOException(
+					String.format("unsupported jimage version %d.%d - %s", version >>> 16, version & 0xFFFF, imageFile));
+		}
+		tableLength = header.get(4);
+		int locationsSize = header.get(5);
+		int stringsSize = header.get(6);
+		int redirectStart = HEADER_SLOTS * 4;
+		int offsetsStart = redirectStart + tableLength * 4;
+		int locationsStart = offsetsStart + tableLength * 4;
+		int stringsStart = locationsStart + locationsSize;
+		indexSize = stringsStart + stringsSize;
+		redirect = slice(redirectStart, tableLength * 4).order(byteOrder).asIntBuffer();
+		offsets = slice(offsetsStart, tableLength * 4).order(byteOrder).asIntBuffer();
+		locations = slice(locationsStart, locationsSize);
+		strings = slice(stringsStart, stringsSize);
+		mapModulePackageDirs = readModulePackageDirs();
+	}
+
+	static JImageFile open(Path imageFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("jimage larger than 2 GB is not supported - " + imageFile);
+			}
+			return new JImageFile(imageFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	private static ByteOrder detectByteOrder(ByteBuffer image) throws IOException {
+		if (image.capacity() < HEADER_SLOTS * 4) {
+			throw new IOException("not a jimage file");
+		}
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.nativeOrder(), ByteOrder.BIG_ENDIAN,
+				ByteOrder.LITTLE_ENDIAN }) {
+			if (image.duplicate().order(order).getInt(0) == MAGIC) {
+				return order;
+			}
+		}
+		throw new IOException("not a jimage file");
+	}
+
+	private ByteBuffer slice(int position, int length) {
+		return image.duplicate().position(position).limit(position + length).slice();
+	}
+
+	private Map<String, Map<String, List<String>>> readModulePackageDirs() throws IOException {
+		Map<String, Map<String, List<String>>> mapModules = new TreeMap<>();
+		Map<Integer, String> stringCache = new HashMap<>();
+		for (int i = 0; i < tableLength; i++) {
+			long[] attributes = readAttributes(offsets.get(i));
+			String module = stringCache.computeIfAbsent((int) attributes[ATTRIBUTE_MODULE], this::getString);
+			if (module.isEmpty() || NON_MODULES.contains(module)) {
+				continue;
+			}
+			if (attributes[ATTRIBUTE_COMPRESSED] != 0) {
+				checkDecompressors(attributes);
+			}
+			String parent = stringCache.computeIfAbsent((int) attributes[ATTRIBUTE_PARENT], this::getString);
+			mapModules.computeIfAbsent(module, m -> new TreeMap<>()).computeIfAbsent(parent, p -> new ArrayList<>())
+					.add(getFileName(attributes));
+		}
+		return mapModules;
+	}
+
+	private long[] readAttributes(int offset) {
+		long[] attributes = new long[ATTRIBUTE_COUNT];
+		int data;
+		while ((data = locations.get(offset) & 0xFF) >>> 3 != ATTRIBUTE_END) {
+			int kind = data >>> 3;
+			int length = (data & 0x7) + 1;
+			long value = 0;
+			for (int j = 0; j < length; j++) {
+				value = (value << 8) | (locations.get(++offset) & 0xFF);
+			}
+			attributes[kind] = value;
+			offset++;
+		}
+		return attributes;
+	}
+
+	private String getString(int offset) {
+		int end = offset;
+		while (strings.get(end) != 0) {
+			end++;
+		}
+		byte[] bytes = new byte[end - offset];
+		strings.duplicate().position(offset).get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private String getFileName(long[] attributes) {
+		String base = getString((int) attributes[ATTRIBUTE_BASE]);
+		String extension = getString((int) attributes[ATTRIBUTE_EXTENSION]);
+		return extension.isEmpty() ? base : base + "." + extension;
+	}
+
+	private void checkDecompressors(long[] attributes) throws IOException {
+		ByteBuffer content = content(attributes[ATTRIBUTE_OFFSET], attributes[ATTRIBUTE_COMPRESSED]);
+		String decompressor = getString(content.getInt(20));
+		if (!ZIP_DECOMPRESSOR.equals(decompressor)) {
+			throw new IOException(
+					String.format("unsupported jimage decompressor %s - %s", decompressor, imageFile));
+		}
+	}
+
+	@Override
+	public List<String> getModules() {
+		return new ArrayList<>(mapModulePackageDirs.keySet());
+	}
+
+	@Override
+	public Map<String, List<String>> getPackageDirs(String module) {
+		return Collections.unmodifiableMap(mapModulePackageDirs.getOrDefault(module, Collections.emptyMap()));
+	}
+
+	@Override
+	public ByteBuffer read(String module, String path) throws IOException {
+		String name = "/" + module + "/" + path;
+		long[] attributes = findLocation(name);
+		if (attributes == null) {
+			throw new IOException(String.format("resource %s not found in %s", name, imageFile));
+		}
+		long compressedSize = attributes[ATTRIBUTE_COMPRESSED];
+		long uncompressedSize = attributes[ATTRIBUTE_UNCOMPRESSED];
+		if (compressedSize == 0) {
+			return content(attributes[ATTRIBUTE_OFFSET], uncompressedSize).asReadOnlyBuffer();
+		}
+		ByteBuffer content = content(attributes[ATTRIBUTE_OFFSET], compressedSize);
+		while (content.remaining() >= COMPRESSED_HEADER_SIZE && content.getInt(0) == COMPRESSED_MAGIC) {
+			content = decompress(content);
+		}
+		return content.asReadOnlyBuffer();
+	}
+
+	private ByteBuffer content(long offset, long size) {
+		return slice(indexSize + (int) offset, (int) size).order(byteOrder);
+	}
+
+	private ByteBuffer decompress(ByteBuffer compressed) throws IOException {
+		// compressed resource header: magic, compressed size, uncompressed size, decompressor name, content offset, terminal flag
+		int uncompressedSize = (int) compressed.getLong(12);
+		String decompressor = getString(compressed.getInt(20));
+		if (!ZIP_DECOMPRESSOR.equals(decompressor)) {
+			throw new IOException(String.format("unsupported jimage decompressor %s - %s", decompressor, imageFile));
+		}
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.duplicate().position(COMPRESSED_HEADER_SIZE));
+			byte[] uncompressed = new byte[uncompressedSize];
+			int length = 0;
+			while (length < uncompressedSize && !inflater.finished()) {
+				int inflated = inflater.inflate(uncompressed, length, uncompressedSize - length);
+				if (inflated == 0 && inflater.needsInput()) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != uncompressedSize) {
+				throw new IOException(String.format("truncated compressed resource in %s - inflated %d of %d bytes",
+						imageFile, length, uncompressedSize));
+			}
+			return ByteBuffer.wrap(uncompressed).order(byteOrder);
+		} catch (DataFormatException e) {
+			throw new IOException("corrupt compressed resource in " + imageFile, e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private long[] findLocation(String name) {
+		int index = redirect.get(hashCode(name, HASH_MULTIPLIER) % tableLength);
+		if (index < 0) {
+			index = -index - 1;
+		} else if (index > 0) {
+			index = hashCode(name, index) % tableLength;
+		} else {
+			return null;
+		}
+		long[] attributes = readAttributes(offsets.get(index));
+		return name.equals(getFullName(attributes)) ? attributes : null;
+	}
+
+	private String getFullName(long[] attributes) {
+		String module = getString((int) attributes[ATTRIBUTE_MODULE]);
+		String parent = getString((int) attributes[ATTRIBUTE_PARENT]);
+		StringBuilder name = new StringBuilder();
+		if (!module.isEmpty()) {
+			name.append('/').append(module).append('/');
+		}
+		if (!parent.isEmpty()) {
+			name.append(parent).append('/');
+		}
+		return name.append(getFileName(attributes)).toString();
+	}
+
+	private static int hashCode(String name, int seed) {
+		for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+			seed = (seed * HASH_MULTIPLIER) ^ (b & 0xFF);
+		}
+		return seed & POSITIVE_MASK;
+	}
+
+	@Override
+	public void close() {
+		// the mapping is released once the buffer is garbage collected
+	}
+
+	@Override
+	public String toString() {
+		return imageFile.toUri().toString();
+	}
+}
@@ -0,0 +1,128 @@
+package io.klib.probe.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import io.klib.probe.java.JreProbe.Options;
+import io.klib.probe.java.JreProbe.Result;
+import io.klib.probe.java.api.JreAnalysis;
+import io.klib.probe.java.api.JreAnalysisService;
+
+/**
+ * Long-lived {@link JreAnalysisService}. Every JRE is analysed into its own
+ * workspace below the bundle data area, the resulting index stays mapped in a
+ * bounded LRU cache until the JRE changes on disk or the entry is evicted.
+ */
+@Component
+@Designate(ocd = JreAnalysisProvider.Config.class)
+public class JreAnalysisProvider implements JreAnalysisService {
+
+	private static final String WORKSPACE_DIR = "jres";
+
+	@ObjectClassDefinition(name = "JRE analysis service")
+	@interface Config {
+		int cacheSize() default 8;
+
+		int parallelism() default 0;
+
+		/**
+		 * mapped, jrt or jrtfs
+		 */
+		String imageReader() default AnalyseJavaRuntime.IMAGE_READER_MAPPED;
+
+		/**
+		 * workspace of the analyses, defaults to the bundle data area
+		 */
+		String workspace() default "";
+	}
+
+	private final ConcurrentMap<Path, Object> mapJreLocks = new ConcurrentHashMap<>();
+	private LruCache<Path, IndexedJreAnalysis> cache;
+	private Options options;
+	private Path workspace;
+
+	@Activate
+	void activate(BundleContext bundleContext, Config config) throws IOException {
+		cache = new LruCache<>(config.cacheSize());
+		options = new Options(config.parallelism(), false, null, false,
+				AnalyseJavaRuntime.isMappedImageReader(config.imageReader()), false, false, null);
+		File dataFile = bundleContext.getDataFile(WORKSPACE_DIR);
+		workspace = Files.createDirectories(!config.workspace().isEmpty() ? Paths.get(config.workspace())
+				: dataFile != null ? dataFile.toPath()
+						: Paths.get(System.getProperty("user.dir"), "wrk", WORKSPACE_DIR));
+	}
+
+	@Deactivate
+	void deactivate() {
+		cache.clear();
+	}
+
+	@Override
+	public JreAnalysis analyse(Path jrePath) throws IOException {
+		Path jre = jrePath.toRealPath();
+		synchronized (mapJreLocks.computeIfAbsent(jre, j -> new Object())) {
+			String stamp = stamp(jre);
+			IndexedJreAnalysis cached = cache.get(jre);
+			if (cached != null && cached.getStamp().equals(stamp)) {
+				return cached;
+			}
+			String name = toWorkspaceName(jre);
+			Path jreWrkPath = workspace.resolve(name);
+			Path jreHome = JreArchive.toJreHome(jre, jreWrkPath.resolve(JreBatch.JRE_DIR));
+			Result result = new JreProbe(name, jreHome, jreWrkPath, options).run(false);
+			if (result.failure != null) {
+				throw new IOException("analysis of JRE " + jre + " failed", result.failure);
+			}
+			IndexedJreAnalysis analysis = new IndexedJreAnalysis(jre, stamp,
+					ProbeIndex.open(jreWrkPath.resolve(JreProbe.META_DIR).resolve(ProbeIndex.FILE_NAME)));
+			cache.put(jre, analysis);
+			return analysis;
+		}
+	}
+
+	@Override
+	public Path diff(Path fromJrePath, Path toJrePath) throws IOException {
+		return JreDiff.diff(fromJrePath.toRealPath(), toJrePath.toRealPath(), workspace, options);
+	}
+
+	@Override
+	public List<Path> getCachedJres() {
+		return cache.keys();
+	}
+
+	@Override
+	public void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * @return size and modification time of the JRE image or archive
+	 */
+	private static String stamp(Path jre) throws IOException {
+		Path modulesFile = jre.resolve("lib").resolve("modules");
+		Path file = JreArchive.isArchive(jre) || !Files.exists(modulesFile) ? jre : modulesFile;
+		return Files.size(file) + "/" + Files.getLastModifiedTime(file).toMillis();
+	}
+
+	/**
+	 * @return readable and unique directory name of the JRE
+	 */
+	private static String toWorkspaceName(Path jre) {
+		byte[] pathHash = ExtractionCache.newDigest().digest(jre.toString().getBytes(StandardCharsets.UTF_8));
+		return JreArchive.baseName(jre) + "_" + ExtractionCache.toHex(pathHash).substring(0, 8);
+	}
+}
@@ -0,0 +1,161 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Compact index of the class files inside the exported packages of a JRE. Per
+ * class it only keeps the internal name, the module and the leading 128 bits
+ * of the SHA-256 of its content, in parallel arrays sorted by class name. The
+ * class files are hashed in parallel, their content is not parsed.
+ */
+final class JreApiIndex {
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final JreImage jreImage;
+	private final PackageIndex packageIndex;
+	private final String[] modules;
+	private final String[] classNames;
+	private final short[] classModules;
+	private final long[] hashesHigh;
+	private final long[] hashesLow;
+
+	private JreApiIndex(JreImage jreImage, PackageIndex packageIndex, String[] modules, String[] classNames,
+			short[] classModules, long[] hashesHigh, long[] hashesLow) {
+		this.jreImage = jreImage;
+		this.packageIndex = packageIndex;
+		this.modules = modules;
+		this.classNames = classNames;
+		this.classModules = classModules;
+		this.hashesHigh = hashesHigh;
+		this.hashesLow = hashesLow;
+	}
+
+	/**
+	 * hashes all class files of the exported packages of the image, the image
+	 * must stay open as long as the index is used to read classes
+	 */
+	static JreApiIndex build(JreImage jreImage, PackageIndex packageIndex, int parallelism) throws IOException {
+		List<String> listModules = jreImage.getModules();
+		List<String> listClassNames = new ArrayList<>();
+		List<Short> listClassModules = new ArrayList<>();
+		for (int m = 0; m < listModules.size(); m++) {
+			String module = listModules.get(m);
+			for (Entry<String, List<String>> packageDir : jreImage.getPackageDirs(module).entrySet()) {
+				if (!packageIndex.isExported(module, JreImage.toPackageName(packageDir.getKey()))) {
+					continue;
+				}
+				for (String fileName : packageDir.getValue()) {
+					if (fileName.endsWith(CLASS_SUFFIX) && !JreImage.MODULE_INFO.equals(fileName)) {
+						listClassNames.add(JreImage.toPath(packageDir.getKey(),
+								fileName.substring(0, fileName.length() - CLASS_SUFFIX.length())));
+						listClassModules.add((short) m);
+					}
+				}
+			}
+		}
+
+		Integer[] order = IntStream.range(0, listClassNames.size()).boxed().toArray(Integer[]::new);
+		Arrays.sort(order, (a, b) -> listClassNames.get(a).compareTo(listClassNames.get(b)));
+		String[] classNames = new String[order.length];
+		short[] classModules = new short[order.length];
+		for (int i = 0; i < order.length; i++) {
+			classNames[i] = listClassNames.get(order[i]);
+			classModules[i] = listClassModules.get(order[i]);
+		}
+		String[] modules = listModules.toArray(new String[0]);
+
+		long[] hashesHigh = new long[classNames.length];
+		long[] hashesLow = new long[classNames.length];
+		ForkJoinPool pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		try {
+			pool.submit(() -> IntStream.range(0, classNames.length).parallel().forEach(i -> {
+				try {
+					ByteBuffer hash = ByteBuffer
+							.wrap(hash(jreImage.read(modules[classModules[i]], classNames[i] + CLASS_SUFFIX)));
+					hashesHigh[i] = hash.getLong();
+					hashesLow[i] = hash.getLong();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			})).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("hashing of JRE classes interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException("hashing of JRE classes failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return new JreApiIndex(jreImage, packageIndex, modules, classNames, classModules, hashesHigh, hashesLow);
+	}
+
+	private static byte[] hash(ByteBuffer content) {
+		MessageDigest md = ExtractionCache.newDigest();
+		md.update(content);
+		return md.digest();
+	}
+
+	PackageIndex getPackageIndex() {
+		return packageIndex;
+	}
+
+	List<String> getModules() {
+		return Arrays.asList(modules);
+	}
+
+	int size() {
+		return classNames.length;
+	}
+
+	/**
+	 * @return internal name of the class at the index, sorted ascending
+	 */
+	String getClassName(int index) {
+		return classNames[index];
+	}
+
+	String getModule(int index) {
+		return modules[classModules[index]];
+	}
+
+	/**
+	 * @return index of the class, negative if the class is not part of the
+	 *         exported packages
+	 */
+	int indexOf(String className) {
+		return Arrays.binarySearch(classNames, className);
+	}
+
+	/**
+	 * @return true if both classes have identical class file content
+	 */
+	boolean hasSameContent(int index, JreApiIndex other, int otherIndex) {
+		return hashesHigh[index] == other.hashesHigh[otherIndex] && hashesLow[index] == other.hashesLow[otherIndex];
+	}
+
+	ClassFileReader readClass(int index) throws IOException {
+		return new ClassFileReader(jreImage.read(getModule(index), classNames[index] + CLASS_SUFFIX));
+	}
+
+	/**
+	 * @return module to its exported packages
+	 */
+	Map<String, List<String>> getModuleExports() {
+		return packageIndex.getMapModuleExportedPackages();
+	}
+}
@@ -0,0 +1,308 @@
+package io.klib.probe.java;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.nio.file.StandardCopyOption.*;
+
+/**
+ * Unpacks JRE distributions shipped as zip or tar.gz archive. An archive is
+ * only unpacked again when its size or modification time changed since the
+ * last run.
+ */
+final class JreArchive {
+
+	private static final String[] ZIP_SUFFIXES = { ".zip" };
+	private static final String[] TAR_GZ_SUFFIXES = { ".tar.gz", ".tgz" };
+	private static final String UNPACKED_MARKER = ".unpacked";
+	private static final int TAR_BLOCK = 512;
+	private static final int MAX_HOME_DEPTH = 4;
+
+	private JreArchive() {
+	}
+
+	static boolean isArchive(Path path) {
+		return Files.isRegularFile(path) && (endsWith(path, ZIP_SUFFIXES) || endsWith(path, TAR_GZ_SUFFIXES));
+	}
+
+	/**
+	 * @return file name of the JRE directory or archive without archive suffix
+	 */
+	static String baseName(Path path) {
+		String name = path.getFileName().toString();
+		return Stream.concat(Stream.of(ZIP_SUFFIXES), Stream.of(TAR_GZ_SUFFIXES))
+				.filter(suffix -> name.toLowerCase().endsWith(suffix))
+				.map(suffix -> name.substring(0, name.length() - suffix.length())).findFirst().orElse(name);
+	}
+
+	/**
+	 * @param jrePath   home directory or archive of a JRE
+	 * @param unpackDir target directory if the JRE is an archive
+	 * @return home directory of the JRE
+	 */
+	static Path toJreHome(Path jrePath, Path unpackDir) throws IOException {
+		Path jreHome = isArchive(jrePath) ? unpack(jrePath, unpackDir) : jrePath;
+		if (!Files.isDirectory(jreHome)) {
+			throw new IOException("JRE not found - " + jrePath);
+		}
+		return jreHome;
+	}
+
+	/**
+	 * unpacks the archive into the target directory, unless it already contains
+	 * the unpacked content of the same archive
+	 *
+	 * @return home directory of the JRE inside the target directory
+	 */
+	static Path unpack(Path archive, Path targetDir) throws IOException {
+		String stamp = Files.size(archive) + "/" + Files.getLastModifiedTime(archive).toMillis();
+		Path marker = targetDir.resolve(UNPACKED_MARKER);
+		if (!Files.exists(marker) || !stamp.equals(Files.readString(marker, StandardCharsets.UTF_8))) {
+			deleteRecursively(targetDir);
+			// entries are checked against the real directory, symbolic links included
+			Path realTargetDir = Files.createDirectories(targetDir).toRealPath();
+			System.out.format("unpacking %s into %s\n", archive, targetDir);
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(archive), 1 << 16)) {
+				if (endsWith(archive, ZIP_SUFFIXES)) {
+					unzip(in, realTargetDir);
+				} else {
+					untar(new GZIPInputStream(in, 1 << 16), realTargetDir);
+				}
+			}
+			Files.writeString(marker, stamp, StandardCharsets.UTF_8);
+		}
+		return findJreHome(targetDir)
+				.orElseThrow(() -> new IOException("no JRE (lib/modules) found inside " + archive));
+	}
+
+	/**
+	 * @return the directory itself or the first directory below it containing
+	 *         <code>lib/modules</code>, e.g. Contents/Home of a macOS JRE
+	 */
+	static Optional<Path> findJreHome(Path dir) throws IOException {
+		try (Stream<Path> dirs = Files.walk(dir, MAX_HOME_DEPTH)) {
+			return dirs.filter(d -> Files.isRegularFile(d.resolve("lib").resolve("modules")))
+					.min(Comparator.comparingInt(Path::getNameCount));
+		}
+	}
+
+	private static void unzip(InputStream in, Path targetDir) throws IOException {
+		try (ZipInputStream zip = new ZipInputStream(in)) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				Path target = resolve(targetDir, entry.getName());
+				if (entry.isDirectory()) {
+					Files.createDirectories(target);
+				} else {
+					Files.createDirectories(target.getParent());
+					Files.copy(zip, target, REPLACE_EXISTING);
+				}
+			}
+		}
+	}
+
+	/**
+	 * minimal ustar reader, supporting GNU long names and pax path records
+	 */
+	private static void untar(InputStream in, Path targetDir) throws IOException {
+		byte[] header = new byte[TAR_BLOCK];
+		String longName = null;
+		while (readBlock(in, header)) {
+			if (header[0] == 0) {
+				// end of archive
+				break;
+			}
+			String name = longName != null ? longName : tarName(header);
+			longName = null;
+			long size = tarNumber(header, 124, 12);
+			char type = (char) header[156];
+			switch (type) {
+			case 'L':
+				longName = trimNul(new String(readContent(in, size), StandardCharsets.UTF_8));
+				break;
+			case 'x':
+				longName = paxPath(new String(readContent(in, size), StandardCharsets.UTF_8));
+				break;
+			case '5':
+				Files.createDirectories(resolve(targetDir, name));
+				break;
+			case '2':
+				Path link = resolve(targetDir, name);
+				Path linkTarget = Paths.get(trimNul(field(header, 157, 100)));
+				if (linkTarget.isAbsolute()
+						|| !link.getParent().resolve(linkTarget).normalize().startsWith(targetDir)) {
+					throw new IOException("archive link outside of target directory - " + name + " -> " + linkTarget);
+				}
+				Files.createDirectories(link.getParent());
+				try {
+					Files.deleteIfExists(link);
+					Files.createSymbolicLink(link, linkTarget);
+				} catch (IOException | UnsupportedOperationException e) {
+					System.err.format("could not create symbolic link %s\n%s\n", link, e);
+				}
+				break;
+			case '1':
+				Path hardLink = resolve(targetDir, name);
+				Files.createDirectories(hardLink.getParent());
+				Files.copy(resolve(targetDir, trimNul(field(header, 157, 100))), hardLink, REPLACE_EXISTING);
+				break;
+			case '0':
+			case '\0':
+				Path file = resolve(targetDir, name);
+				Files.createDirectories(file.getParent());
+				Files.copy(new BoundedInputStream(in, size), file, REPLACE_EXISTING);
+				skipPadding(in, size);
+				break;
+			default:
+				// global pax headers, devices, fifos
+				readContent(in, size);
+				break;
+			}
+		}
+	}
+
+	private static String tarName(byte[] header) {
+		String name = trimNul(field(header, 0, 100));
+		if ("ustar".equals(trimNul(field(header, 257, 6)).trim())) {
+			String prefix = trimNul(field(header, 345, 155));
+			if (!prefix.isEmpty()) {
+				name = prefix + "/" + name;
+			}
+		}
+		return name;
+	}
+
+	private static String paxPath(String records) {
+		String path = null;
+		int pos = 0;
+		while (pos < records.length()) {
+			int space = records.indexOf(' ', pos);
+			if (space < 0) {
+				break;
+			}
+			int length = Integer.parseInt(records.substring(pos, space));
+			String record = records.substring(space + 1, pos + length - 1);
+			if (record.startsWith("path=")) {
+				path = record.substring("path=".length());
+			}
+			pos += length;
+		}
+		return path;
+	}
+
+	private static long tarNumber(byte[] header, int offset, int length) {
+		if ((header[offset] & 0x80) != 0) {
+			// base-256 encoding of large sizes
+			long value = header[offset] & 0x7F;
+			for (int i = 1; i < length; i++) {
+				value = (value << 8) | (header[offset + i] & 0xFF);
+			}
+			return value;
+		}
+		String octal = trimNul(field(header, offset, length)).trim();
+		return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+	}
+
+	private static String field(byte[] header, int offset, int length) {
+		return new String(header, offset, length, StandardCharsets.UTF_8);
+	}
+
+	private static String trimNul(String value) {
+		int end = value.indexOf('\0');
+		return end < 0 ? value : value.substring(0, end);
+	}
+
+	private static byte[] readContent(InputStream in, long size) throws IOException {
+		byte[] content = in.readNBytes((int) size);
+		skipPadding(in, size);
+		return content;
+	}
+
+	private static void skipPadding(InputStream in, long size) throws IOException {
+		long padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+		in.readNBytes((int) padding);
+	}
+
+	private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+		return in.readNBytes(block, 0, block.length) == block.length;
+	}
+
+	/**
+	 * resolves an entry name, rejecting names escaping the real target
+	 * directory, also through symbolic links unpacked before
+	 */
+	private static Path resolve(Path targetDir, String name) throws IOException {
+		Path target = targetDir.resolve(name).normalize();
+		if (!target.startsWith(targetDir)) {
+			throw new IOException("archive entry outside of target directory - " + name);
+		}
+		Path parent = target.getParent();
+		while (!Files.exists(parent)) {
+			parent = parent.getParent();
+		}
+		if (!parent.toRealPath().startsWith(targetDir)) {
+			throw new IOException("archive entry outside of target directory through a link - " + name);
+		}
+		return target;
+	}
+
+	private static boolean endsWith(Path path, String[] suffixes) {
+		String name = path.getFileName().toString().toLowerCase();
+		return Stream.of(suffixes).anyMatch(name::endsWith);
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		if (Files.exists(dir)) {
+			try (Stream<Path> paths = Files.walk(dir)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	private static class BoundedInputStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long size) {
+			this.in = in;
+			this.remaining = size;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.klib.probe.java.JreProbe.Options;
+import io.klib.probe.java.JreProbe.Result;
+
+/**
+ * Analyses several JREs within one probe run. Every JRE, given as home
+ * directory or as zip/tar.gz archive, gets its own workspace below the batch
+ * workspace and its own image reader. The JREs are processed in parallel with
+ * bounded concurrency and the run ends with a single summary.
+ */
+class JreBatch {
+
+	static final String JRE_DIR = "jre";
+
+	private final Path wrkPath;
+	private final Options options;
+	private final int concurrency;
+
+	/**
+	 * @param concurrency maximum number of JREs analysed at the same time, the
+	 *                    parallelism of each JRE is reduced accordingly
+	 */
+	JreBatch(Path wrkPath, Options options, int concurrency) {
+		this.wrkPath = wrkPath;
+		this.options = options;
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	List<Result> run(List<Path> jrePaths) {
+		long startTimeMillis = System.currentTimeMillis();
+		int threads = Math.min(concurrency, jrePaths.size());
+		Options probeOptions = options.withParallelism(Math.max(1, options.parallelism / Math.max(1, threads)));
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<Result> results = new ArrayList<>();
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			Set<String> names = new HashSet<>();
+			for (Path jrePath : jrePaths) {
+				String name = uniqueName(JreArchive.baseName(jrePath), names);
+				futures.add(executor.submit(() -> probe(name, jrePath, probeOptions)));
+			}
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// probe reports its own failures, only unexpected errors end up here
+					System.err.format("batch analysis failed\n%s\n", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		printSummary(System.out, results, System.currentTimeMillis() - startTimeMillis);
+		return results;
+	}
+
+	private Result probe(String name, Path jrePath, Options probeOptions) {
+		Path jreWrkPath = wrkPath.resolve(name);
+		try {
+			Path jreHome = JreArchive.toJreHome(jrePath, jreWrkPath.resolve(JRE_DIR));
+			return new JreProbe(name, jreHome, jreWrkPath, probeOptions).run();
+		} catch (IOException e) {
+			System.err.format("could not prepare JRE %s\n%s\n", jrePath, e);
+			return new Result(name, jrePath, null, null, 0, 0, false, 0, e);
+		}
+	}
+
+	private static String uniqueName(String name, Set<String> names) {
+		String unique = name;
+		for (int i = 2; !names.add(unique); i++) {
+			unique = name + "_" + i;
+		}
+		return unique;
+	}
+
+	static void printSummary(PrintStream out, List<Result> results, long durationMillis) {
+		long failed = results.stream().filter(r -> r.failure != null).count();
+		out.format("batch summary - %d JREs analysed, %d failed, took %d ms\n", results.size(), failed,
+				durationMillis);
+		for (Result r : results) {
+			if (r.failure != null) {
+				out.format("    %-32s FAILED %s\n", r.name, r.failure.getMessage());
+			} else {
+				out.format("    %-32s %-10s %5d exported %5d private packages  %-10s %6d ms\n", r.name, r.version,
+						r.exportedPackages, r.privatePackages, r.changed ? "changed" : "up to date", r.durationMillis);
+			}
+		}
+	}
+}
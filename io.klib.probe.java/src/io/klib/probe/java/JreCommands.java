@@ -0,0 +1,72 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.apache.felix.service.command.Descriptor;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import io.klib.probe.java.api.JreAnalysis;
+import io.klib.probe.java.api.JreAnalysisService;
+
+/**
+ * Gogo shell commands of the {@link JreAnalysisService}, e.g.
+ * <code>jre:which /opt/jdk-11 java.sql.Connection</code>.
+ */
+@Component(service = JreCommands.class, property = { "osgi.command.scope=jre", //
+		"osgi.command.function=analyse", "osgi.command.function=exports", "osgi.command.function=which",
+		"osgi.command.function=diff", "osgi.command.function=cached" })
+public class JreCommands {
+
+	@Reference
+	private JreAnalysisService analysisService;
+
+	@Descriptor("analyses a JRE, answered from the cache while the JRE is unchanged")
+	public String analyse(@Descriptor("home directory or archive of the JRE") String jrePath) throws IOException {
+		long startTimeMillis = System.currentTimeMillis();
+		JreAnalysis analysis = analysisService.analyse(Paths.get(jrePath));
+		return String.format("%s - took %d ms", analysis, System.currentTimeMillis() - startTimeMillis);
+	}
+
+	@Descriptor("lists the packages exported by a JRE with their module")
+	public List<String> exports(@Descriptor("home directory or archive of the JRE") String jrePath)
+			throws IOException {
+		JreAnalysis analysis = analysisService.analyse(Paths.get(jrePath));
+		return analysis.getExportedPackages().stream()
+				.map(p -> String.format("%-48s %s", p, analysis.getModuleOfPackage(p).orElse("")))
+				.collect(Collectors.toList());
+	}
+
+	@Descriptor("shows the module of a package or class and whether it is exported")
+	public String which(@Descriptor("home directory or archive of the JRE") String jrePath,
+			@Descriptor("package or class name") String name) throws IOException {
+		JreAnalysis analysis = analysisService.analyse(Paths.get(jrePath));
+		Optional<String> packageModule = analysis.getModuleOfPackage(name);
+		if (packageModule.isPresent()) {
+			return String.format("package %s in module %s - %s", name, packageModule.get(),
+					analysis.getExportingModule(name).isPresent() ? "exported" : "not exported");
+		}
+		Optional<String> classModule = analysis.getModuleOfClass(name);
+		if (classModule.isPresent()) {
+			return String.format("class %s in module %s - %s", name, classModule.get(),
+					analysis.isClassExported(name) ? "exported" : "not exported");
+		}
+		return String.format("%s is neither a package nor a class of %s", name, analysis.getJrePath());
+	}
+
+	@Descriptor("writes the API diff of two JREs")
+	public Path diff(@Descriptor("home directory or archive of the old JRE") String fromJrePath,
+			@Descriptor("home directory or archive of the new JRE") String toJrePath) throws IOException {
+		return analysisService.diff(Paths.get(fromJrePath), Paths.get(toJrePath));
+	}
+
+	@Descriptor("lists the cached JRE analyses, most recently used last")
+	public List<Path> cached() {
+		return analysisService.getCachedJres();
+	}
+}
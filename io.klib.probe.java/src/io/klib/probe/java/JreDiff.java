@@ -0,0 +1,315 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import io.klib.probe.java.ChangeSummary.Change;
+import io.klib.probe.java.ClassFileReader.Member;
+
+/**
+ * API diff of two JREs on module, package and class level. Classes of the
+ * exported packages are compared by their content hash, only classes with
+ * different content are parsed to report the differences of their public and
+ * protected members.
+ */
+class JreDiff {
+
+	static final String DIFF_DIR = "diff";
+	private static final int API_ACCESS = ClassFileReader.ACC_PUBLIC | ClassFileReader.ACC_PROTECTED
+			| ClassFileReader.ACC_STATIC | ClassFileReader.ACC_FINAL | ClassFileReader.ACC_ABSTRACT
+			| ClassFileReader.ACC_INTERFACE;
+
+	private final int parallelism;
+
+	private final List<String> addedModules = new ArrayList<>();
+	private final List<String> removedModules = new ArrayList<>();
+	private final Map<String, String> mapAddedPackages = new TreeMap<>();
+	private final Map<String, String> mapRemovedPackages = new TreeMap<>();
+	private final Map<String, String> mapMovedPackages = new TreeMap<>();
+	private final List<String> addedClasses = new ArrayList<>();
+	private final List<String> removedClasses = new ArrayList<>();
+	private final Map<String, List<String>> mapChangedClasses = new TreeMap<>();
+	private int identicalClasses;
+	private int parsedClasses;
+
+	JreDiff(int parallelism) {
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * analyses both JREs, given as home directory or archive, and writes the
+	 * diff report into <code>wrk/diff</code>, failures are printed
+	 *
+	 * @return <code>false</code> if the diff failed
+	 */
+	static boolean run(Path fromJre, Path toJre, Path wrkPath, JreProbe.Options options) {
+		try {
+			diff(fromJre, toJre, wrkPath, options);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.err.format("could not diff JRE %s with %s\n%s\n", fromJre, toJre, e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return the written diff report
+	 */
+	static Path diff(Path fromJre, Path toJre, Path wrkPath, JreProbe.Options options) throws IOException {
+		long startTimeMillis = System.currentTimeMillis();
+		String fromName = JreArchive.baseName(fromJre);
+		String toName = JreArchive.baseName(toJre);
+		if (fromName.equals(toName)) {
+			toName = toName + "_2";
+		}
+		Path fromHome = JreArchive.toJreHome(fromJre, wrkPath.resolve(fromName).resolve(JreBatch.JRE_DIR));
+		Path toHome = JreArchive.toJreHome(toJre, wrkPath.resolve(toName).resolve(JreBatch.JRE_DIR));
+		try (JreImage fromImage = JreProbe.openJreImage(fromHome, options.mappedImage);
+				JreImage toImage = JreProbe.openJreImage(toHome, options.mappedImage)) {
+			ModuleExportTable fromTable = ModuleExportTable.read(fromImage);
+			ModuleExportTable toTable = ModuleExportTable.read(toImage);
+			JreApiIndex fromIndex = JreApiIndex.build(fromImage, fromTable.getPackageIndex(), options.parallelism);
+			JreApiIndex toIndex = JreApiIndex.build(toImage, toTable.getPackageIndex(), options.parallelism);
+			long indexMillis = System.currentTimeMillis() - startTimeMillis;
+
+			JreDiff diff = new JreDiff(options.parallelism);
+			diff.compare(fromIndex, toIndex);
+			String title = String.format("API diff %s %s -> %s %s", fromName, JreProbe.getJreVersion(fromHome, fromTable),
+					toName, JreProbe.getJreVersion(toHome, toTable));
+			Path reportFile = Files.createDirectories(wrkPath.resolve(DIFF_DIR))
+					.resolve(fromName + "_to_" + toName + ".txt");
+			Change change = ReportWriter.write(reportFile, out -> diff.write(out, title));
+			System.out.format("%s - %d identical classes skipped, %d classes parsed, %s\n", title,
+					diff.identicalClasses, diff.parsedClasses, diff.describe());
+			System.out.format("%s %s - indexing took %d ms, diff took %d ms\n", change.name().toLowerCase(),
+					reportFile, indexMillis, System.currentTimeMillis() - startTimeMillis - indexMillis);
+			return reportFile;
+		}
+	}
+
+	void compare(JreApiIndex from, JreApiIndex to) throws IOException {
+		compareModules(from.getModules(), to.getModules());
+		comparePackages(from.getPackageIndex(), to.getPackageIndex());
+		compareClasses(from, to);
+	}
+
+	private void compareModules(List<String> fromModules, List<String> toModules) {
+		Set<String> setFrom = new HashSet<>(fromModules);
+		Set<String> setTo = new HashSet<>(toModules);
+		toModules.stream().filter(m -> !setFrom.contains(m)).sorted().forEach(addedModules::add);
+		fromModules.stream().filter(m -> !setTo.contains(m)).sorted().forEach(removedModules::add);
+	}
+
+	private void comparePackages(PackageIndex from, PackageIndex to) {
+		for (String pkg : to.getAllExportedPackages()) {
+			if (!from.isExported(pkg)) {
+				mapAddedPackages.put(pkg, to.getModule(pkg));
+			} else if (!from.getModule(pkg).equals(to.getModule(pkg))) {
+				mapMovedPackages.put(pkg, from.getModule(pkg) + " -> " + to.getModule(pkg));
+			}
+		}
+		for (String pkg : from.getAllExportedPackages()) {
+			if (!to.isExported(pkg)) {
+				mapRemovedPackages.put(pkg, from.getModule(pkg));
+			}
+		}
+	}
+
+	/**
+	 * merges the sorted class names of both indexes, classes with equal hashes
+	 * are skipped and all others are parsed in parallel
+	 */
+	private void compareClasses(JreApiIndex from, JreApiIndex to) throws IOException {
+		List<int[]> candidates = new ArrayList<>();
+		int i = 0;
+		int j = 0;
+		while (i < from.size() || j < to.size()) {
+			int cmp = i >= from.size() ? 1
+					: j >= to.size() ? -1 : from.getClassName(i).compareTo(to.getClassName(j));
+			if (cmp < 0) {
+				candidates.add(new int[] { i++, -1 });
+			} else if (cmp > 0) {
+				candidates.add(new int[] { -1, j++ });
+			} else if (from.hasSameContent(i, to, j)) {
+				identicalClasses++;
+				i++;
+				j++;
+			} else {
+				candidates.add(new int[] { i++, j++ });
+			}
+		}
+		parsedClasses = candidates.size();
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<ClassDiff> diffs;
+		try {
+			diffs = pool.submit(() -> candidates.parallelStream().map(c -> compareClass(from, c[0], to, c[1]))
+					.filter(Objects::nonNull).collect(Collectors.toList())).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("diff of JRE classes interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException("diff of JRE classes failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		for (ClassDiff diff : diffs) {
+			if (diff.changes == null) {
+				(diff.added ? addedClasses : removedClasses).add(diff.className);
+			} else {
+				mapChangedClasses.put(diff.className, diff.changes);
+			}
+		}
+		Collections.sort(addedClasses);
+		Collections.sort(removedClasses);
+	}
+
+	private static final class ClassDiff {
+		final String className;
+		final boolean added;
+		final List<String> changes;
+
+		ClassDiff(String className, boolean added, List<String> changes) {
+			this.className = className;
+			this.added = added;
+			this.changes = changes;
+		}
+	}
+
+	/**
+	 * @return <code>null</code> if the API of the class did not change
+	 */
+	private static ClassDiff compareClass(JreApiIndex from, int fromIndex, JreApiIndex to, int toIndex) {
+		try {
+			ClassFileReader fromClass = fromIndex < 0 ? null : from.readClass(fromIndex);
+			ClassFileReader toClass = toIndex < 0 ? null : to.readClass(toIndex);
+			boolean fromApi = fromClass != null && fromClass.isApi();
+			boolean toApi = toClass != null && toClass.isApi();
+			if (!fromApi && !toApi) {
+				return null;
+			}
+			if (!fromApi || !toApi) {
+				String className = fromApi ? describeClass(from, fromIndex) : describeClass(to, toIndex);
+				return new ClassDiff(className, toApi, null);
+			}
+
+			List<String> changes = new ArrayList<>();
+			int fromAccess = fromClass.getAccess() & API_ACCESS;
+			int toAccess = toClass.getAccess() & API_ACCESS;
+			if (fromAccess != toAccess) {
+				changes.add(String.format("~ access %s -> %s", describeAccess(fromAccess), describeAccess(toAccess)));
+			}
+			if (!Objects.equals(fromClass.getSuperName(), toClass.getSuperName())) {
+				changes.add(String.format("~ superclass %s -> %s", fromClass.getSuperName(), toClass.getSuperName()));
+			}
+			Set<String> fromInterfaces = new HashSet<>(fromClass.getInterfaces());
+			Set<String> toInterfaces = new HashSet<>(toClass.getInterfaces());
+			toClass.getInterfaces().stream().filter(n -> !fromInterfaces.contains(n)).sorted()
+					.forEach(n -> changes.add("+ implements " + n));
+			fromClass.getInterfaces().stream().filter(n -> !toInterfaces.contains(n)).sorted()
+					.forEach(n -> changes.add("- implements " + n));
+			compareMembers("field", fromClass.getFields(), toClass.getFields(), changes);
+			compareMembers("method", fromClass.getMethods(), toClass.getMethods(), changes);
+			return changes.isEmpty() ? null : new ClassDiff(describeClass(to, toIndex), false, changes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void compareMembers(String kind, List<Member> fromMembers, List<Member> toMembers,
+			List<String> changes) {
+		Map<String, Integer> mapFrom = apiMembers(fromMembers);
+		Map<String, Integer> mapTo = apiMembers(toMembers);
+		mapTo.forEach((member, access) -> {
+			Integer fromAccess = mapFrom.get(member);
+			if (fromAccess == null) {
+				changes.add(String.format("+ %s %s", kind, member));
+			} else if (!fromAccess.equals(access)) {
+				changes.add(String.format("~ %s %s %s -> %s", kind, member, describeAccess(fromAccess),
+						describeAccess(access)));
+			}
+		});
+		mapFrom.keySet().stream().filter(m -> !mapTo.containsKey(m))
+				.forEach(m -> changes.add(String.format("- %s %s", kind, m)));
+	}
+
+	private static Map<String, Integer> apiMembers(List<Member> members) {
+		Map<String, Integer> mapMembers = new TreeMap<>();
+		members.stream().filter(Member::isApi).forEach(m -> mapMembers.put(m.toString(), m.access & API_ACCESS));
+		return mapMembers;
+	}
+
+	private static String describeClass(JreApiIndex index, int classIndex) {
+		return String.format("%s (%s)", index.getClassName(classIndex).replace('/', '.'),
+				index.getModule(classIndex));
+	}
+
+	private static String describeAccess(int access) {
+		Map<Integer, String> mapFlags = new LinkedHashMap<>();
+		mapFlags.put(ClassFileReader.ACC_PUBLIC, "public");
+		mapFlags.put(ClassFileReader.ACC_PROTECTED, "protected");
+		mapFlags.put(ClassFileReader.ACC_STATIC, "static");
+		mapFlags.put(ClassFileReader.ACC_FINAL, "final");
+		mapFlags.put(ClassFileReader.ACC_ABSTRACT, "abstract");
+		mapFlags.put(ClassFileReader.ACC_INTERFACE, "interface");
+		String flags = mapFlags.entrySet().stream().filter(f -> (access & f.getKey()) != 0).map(Map.Entry::getValue)
+				.collect(Collectors.joining(" "));
+		return flags.isEmpty() ? "package-private" : flags;
+	}
+
+	String describe() {
+		return String.format(
+				"modules %d added %d removed, packages %d added %d removed %d moved, classes %d added %d removed %d changed",
+				addedModules.size(), removedModules.size(), mapAddedPackages.size(), mapRemovedPackages.size(),
+				mapMovedPackages.size(), addedClasses.size(), removedClasses.size(), mapChangedClasses.size());
+	}
+
+	void write(Writer out, String title) throws IOException {
+		out.write("# " + title + "\n");
+		out.write("# " + describe() + "\n");
+		writeSection(out, "modules added", addedModules);
+		writeSection(out, "modules removed", removedModules);
+		writeSection(out, "packages added", describePackages(mapAddedPackages));
+		writeSection(out, "packages removed", describePackages(mapRemovedPackages));
+		writeSection(out, "packages moved", describePackages(mapMovedPackages));
+		writeSection(out, "classes added", addedClasses);
+		writeSection(out, "classes removed", removedClasses);
+		out.write("\nclasses changed\n");
+		for (Map.Entry<String, List<String>> changedClass : mapChangedClasses.entrySet()) {
+			out.write("    " + changedClass.getKey() + "\n");
+			for (String change : changedClass.getValue()) {
+				out.write("        " + change + "\n");
+			}
+		}
+	}
+
+	private static List<String> describePackages(Map<String, String> mapPackages) {
+		return mapPackages.entrySet().stream().map(e -> String.format("%s (%s)", e.getKey(), e.getValue()))
+				.collect(Collectors.toList());
+	}
+
+	private static void writeSection(Writer out, String section, List<String> lines) throws IOException {
+		out.write("\n" + section + "\n");
+		for (String line : lines) {
+			out.write("    " + line + "\n");
+		}
+	}
+}
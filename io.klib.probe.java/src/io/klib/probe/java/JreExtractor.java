@@ -0,0 +1,398 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import io.klib.probe.java.ExtractionCache.Entry;
+import io.klib.probe.java.ProbeMetrics.Counter;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Extracts the content of a {@link JreImage} in a single pass.
+ * Every file is read once and routed into the module tree and, if its package
+ * is exported, into the flat package export tree and/or the ee.j2se jar. The
+ * work is split per module and per package and executed on a work-stealing
+ * {@link ForkJoinPool}. Files are written to temporary names and moved into
+ * place, completed packages are recorded in the {@link ExtractionJournal}, so
+ * an interrupted extraction resumes with the packages it did not complete.
+ */
+class JreExtractor {
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final int parallelism;
+	private final ForkJoinPool sharedPool;
+	private final boolean stubClasses;
+	private final boolean reuseExports;
+	private final LongAdder fileCount = new LongAdder();
+	private final LongAdder exportFileCount = new LongAdder();
+	private final LongAdder unchangedFileCount = new LongAdder();
+	private final LongAdder byteCount = new LongAdder();
+	private final LongAdder stubCount = new LongAdder();
+	private final LongAdder stubSourceByteCount = new LongAdder();
+	private final LongAdder stubByteCount = new LongAdder();
+	private final LongAdder writtenFileCount = new LongAdder();
+	private final LongAdder writtenByteCount = new LongAdder();
+	private final LongAdder linkedFileCount = new LongAdder();
+	private final LongAdder resumedFileCount = new LongAdder();
+	private final LongAdder failedFileCount = new LongAdder();
+	private final LongAdder failedDirCount = new LongAdder();
+	private final ProbeMetrics metrics;
+	private final ContentStore contentStore;
+	private final ProgressLine progress = new ProgressLine("extracted", fileCount::sum, byteCount::sum);
+
+	/**
+	 * @param stubClasses  export API-only stubs of the classes instead of the
+	 *                     class files of the image
+	 * @param reuseExports the export tree of the previous extraction was written
+	 *                     in the same mode, so unchanged files can be kept
+	 * @param metrics      receives the file and byte counters of the extraction
+	 * @param contentStore store the files are linked from, <code>null</code>
+	 *                     to write them into the targets
+	 */
+	JreExtractor(int parallelism, boolean stubClasses, boolean reuseExports, ProbeMetrics metrics,
+			ContentStore contentStore) {
+		this(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), null, stubClasses,
+				reuseExports, metrics, contentStore);
+	}
+
+	/**
+	 * @param sharedPool pool the files are extracted in, it is not shut down
+	 */
+	JreExtractor(ForkJoinPool sharedPool, boolean stubClasses, boolean reuseExports, ProbeMetrics metrics,
+			ContentStore contentStore) {
+		this(sharedPool.getParallelism(), sharedPool, stubClasses, reuseExports, metrics, contentStore);
+	}
+
+	private JreExtractor(int parallelism, ForkJoinPool sharedPool, boolean stubClasses, boolean reuseExports,
+			ProbeMetrics metrics, ContentStore contentStore) {
+		this.parallelism = parallelism;
+		this.sharedPool = sharedPool;
+		this.stubClasses = stubClasses;
+		this.reuseExports = reuseExports;
+		this.metrics = metrics;
+		this.contentStore = contentStore;
+	}
+
+	/**
+	 * @param modulesPath       target of the module tree, <code>null</code> to skip it
+	 * @param packageExportPath target of the flat export tree, <code>null</code> to skip it
+	 * @param eeJarWriter       target jar of the exported packages, <code>null</code> to skip it
+	 * @param cache             manifests of the previous extraction, files with unchanged content are not rewritten
+	 * @param journal           journal of the completed packages, <code>null</code> to extract without it
+	 * @throws IOException if the extraction was interrupted or any file could not be extracted
+	 */
+	void extract(JreImage jreImage, Path modulesPath, Path packageExportPath, EeJarWriter eeJarWriter,
+			ExtractionCache cache, ExtractionJournal journal, PackageIndex packageIndex) throws IOException {
+		long startNanos = System.nanoTime();
+		ForkJoinPool pool = sharedPool != null ? sharedPool : new ForkJoinPool(parallelism);
+		try {
+			List<ModuleTask> tasks = jreImage.getModules().stream()
+					.map(m -> new ModuleTask(jreImage, m, modulesPath, packageExportPath, eeJarWriter, cache,
+							journal, packageIndex))
+					.collect(Collectors.toList());
+			pool.submit(() -> RecursiveAction.invokeAll(tasks)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			// the owner of a shared pool stops it
+			if (pool != sharedPool) {
+				pool.shutdownNow();
+			}
+			throw new IOException("extraction of JRE interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("extraction of JRE failed", e.getCause());
+		} finally {
+			if (pool != sharedPool) {
+				pool.shutdown();
+			}
+			progress.finish();
+		}
+		metrics.add(Counter.FILES, fileCount.sum());
+		metrics.add(Counter.BYTES, byteCount.sum());
+		metrics.add(Counter.EXPORTED_FILES, exportFileCount.sum());
+		metrics.add(Counter.UNCHANGED_FILES, unchangedFileCount.sum());
+		metrics.add(Counter.WRITTEN_FILES, writtenFileCount.sum());
+		metrics.add(Counter.WRITTEN_BYTES, writtenByteCount.sum());
+		metrics.add(Counter.STUBBED_CLASSES, stubCount.sum());
+		metrics.add(Counter.LINKED_FILES, linkedFileCount.sum());
+		metrics.add(Counter.RESUMED_FILES, resumedFileCount.sum());
+		printThroughput(System.nanoTime() - startNanos);
+		if (failedFileCount.sum() > 0 || failedDirCount.sum() > 0) {
+			throw new IOException(String.format("could not extract %d files and %d module or package dirs of JRE",
+					failedFileCount.sum(), failedDirCount.sum()));
+		}
+	}
+
+	private void printThroughput(long durationNanos) {
+		double seconds = Math.max(durationNanos, 1) / 1_000_000_000d;
+		long files = fileCount.sum();
+		double megaBytes = byteCount.sum() / (1024d * 1024d);
+		System.out.format(
+				"extracted %d files (%.1f MB, %d exported, %d unchanged) with parallelism %d in %d ms"
+						+ " - %.0f files/s, %.1f MB/s\n",
+				files, megaBytes, exportFileCount.sum(), unchangedFileCount.sum(), parallelism,
+				durationNanos / 1_000_000, files / seconds, megaBytes / seconds);
+		if (resumedFileCount.sum() > 0) {
+			System.out.format("resumed %d files of completed packages from the journal\n", resumedFileCount.sum());
+		}
+		if (contentStore != null) {
+			System.out.format("linked %d of %d written files from the content store\n", linkedFileCount.sum(),
+					writtenFileCount.sum());
+		}
+		if (stubClasses) {
+			long sourceBytes = stubSourceByteCount.sum();
+			long stubBytes = stubByteCount.sum();
+			System.out.format("stubbed %d exported classes from %.1f MB to %.1f MB - %.1f%% smaller\n",
+					stubCount.sum(), sourceBytes / (1024d * 1024d), stubBytes / (1024d * 1024d),
+					sourceBytes > 0 ? 100d * (sourceBytes - stubBytes) / sourceBytes : 0d);
+		}
+	}
+
+	private class ModuleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final JreImage jreImage;
+		private final String moduleName;
+		private final Path modulesPath;
+		private final Path packageExportPath;
+		private final EeJarWriter eeJarWriter;
+		private final ExtractionCache cache;
+		private final ExtractionJournal journal;
+		private final PackageIndex packageIndex;
+
+		ModuleTask(JreImage jreImage, String moduleName, Path modulesPath, Path packageExportPath,
+				EeJarWriter eeJarWriter, ExtractionCache cache, ExtractionJournal journal, PackageIndex packageIndex) {
+			this.jreImage = jreImage;
+			this.moduleName = moduleName;
+			this.modulesPath = modulesPath;
+			this.packageExportPath = packageExportPath;
+			this.eeJarWriter = eeJarWriter;
+			this.cache = cache;
+			this.journal = journal;
+			this.packageIndex = packageIndex;
+		}
+
+		@Override
+		protected void compute() {
+			// the jar is written anew, so it needs the content of every package
+			if (journal != null && eeJarWriter == null && journal.isModuleComplete(moduleName)) {
+				journal.getCompletedPackages(moduleName).values().forEach(this::resume);
+				return;
+			}
+			Map<String, List<String>> mapPackageDir2Files;
+			try {
+				mapPackageDir2Files = jreImage.getPackageDirs(moduleName);
+			} catch (IOException e) {
+				System.err.format("could not read module dir %s\n%s\n", moduleName, e);
+				failedDirCount.increment();
+				return;
+			}
+			List<PackageTask> tasks = new ArrayList<>(mapPackageDir2Files.size());
+			mapPackageDir2Files.forEach((packageDir, files) -> {
+				boolean exported = packageIndex.isExported(moduleName, JreImage.toPackageName(packageDir));
+				Path moduleTargetDir = modulesPath != null ? modulesPath.resolve(moduleName).resolve(packageDir)
+						: null;
+				Path exportTargetDir = packageExportPath != null && exported ? packageExportPath.resolve(packageDir)
+						: null;
+				String jarPackageDir = eeJarWriter != null && exported ? packageDir : null;
+				Map<String, Entry> journaledEntries = journal != null
+						? journal.getCompletedPackage(moduleName, packageDir)
+						: null;
+				if (journaledEntries != null && eeJarWriter == null) {
+					resume(journaledEntries);
+				} else if (moduleTargetDir != null || exportTargetDir != null || jarPackageDir != null) {
+					tasks.add(new PackageTask(jreImage, moduleName, packageDir, files, exported, moduleTargetDir,
+							exportTargetDir, eeJarWriter, jarPackageDir, cache, journal, journaledEntries));
+				}
+			});
+			invokeAll(tasks);
+			if (journal != null && tasks.stream().allMatch(t -> t.complete)) {
+				try {
+					journal.completeModule(moduleName);
+				} catch (IOException e) {
+					System.err.format("could not journal module %s\n%s\n", moduleName, e);
+				}
+			}
+		}
+
+		/**
+		 * takes the files of a package completed by the interrupted extraction
+		 */
+		private void resume(Map<String, Entry> journaledEntries) {
+			journaledEntries.forEach((path, entry) -> cache.record(moduleName, path, entry));
+			resumedFileCount.add(journaledEntries.size());
+		}
+	}
+
+	private class PackageTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final JreImage jreImage;
+		private final String moduleName;
+		private final String packageDir;
+		private final List<String> files;
+		private final boolean exported;
+		private final Path moduleTargetDir;
+		private final Path exportTargetDir;
+		private final EeJarWriter eeJarWriter;
+		private final String jarPackageDir;
+		private final ExtractionCache cache;
+		private final ExtractionJournal journal;
+		private final Map<String, Entry> journaledEntries;
+		private boolean complete;
+
+		/**
+		 * @param journaledEntries files of the package completed by the
+		 *                         interrupted extraction, <code>null</code> if
+		 *                         the package was not completed
+		 */
+		PackageTask(JreImage jreImage, String moduleName, String packageDir, List<String> files, boolean exported,
+				Path moduleTargetDir, Path exportTargetDir, EeJarWriter eeJarWriter, String jarPackageDir,
+				ExtractionCache cache, ExtractionJournal journal, Map<String, Entry> journaledEntries) {
+			this.jreImage = jreImage;
+			this.moduleName = moduleName;
+			this.packageDir = packageDir;
+			this.files = files;
+			this.exported = exported;
+			this.moduleTargetDir = moduleTargetDir;
+			this.exportTargetDir = exportTargetDir;
+			this.eeJarWriter = eeJarWriter;
+			this.jarPackageDir = jarPackageDir;
+			this.cache = cache;
+			this.journal = journal;
+			this.journaledEntries = journaledEntries;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (moduleTargetDir != null) {
+					Files.createDirectories(moduleTargetDir);
+				}
+				if (exportTargetDir != null) {
+					Files.createDirectories(exportTargetDir);
+				}
+			} catch (IOException e) {
+				System.err.format("could not create package dir\n%s\n", e);
+				failedDirCount.increment();
+				return;
+			}
+			Map<String, Entry> entries = new LinkedHashMap<>();
+			boolean failed = false;
+			for (String fileName : files) {
+				String path = JreImage.toPath(packageDir, fileName);
+				try {
+					ByteBuffer content = jreImage.read(moduleName, path);
+					int size = content.remaining();
+					String hash = cache.hash(content.duplicate());
+					Entry journaled = journaledEntries != null ? journaledEntries.get(path) : null;
+					Entry previous = journaled != null ? journaled : cache.getPrevious(moduleName, path);
+					boolean unchanged = previous != null && previous.size == size && previous.hash.equals(hash);
+					if (moduleTargetDir != null) {
+						writeIfChanged(moduleTargetDir.resolve(fileName), content.duplicate(), hash, unchanged);
+					}
+					boolean exportUnchanged = unchanged && previous.exported && (reuseExports || journaled != null)
+							&& exportTargetDir != null
+							&& Files.exists(exportTargetDir.resolve(fileName));
+					ByteBuffer exportContent = content;
+					String exportHash = hash;
+					if (stubClasses && fileName.endsWith(CLASS_SUFFIX)
+							&& (jarPackageDir != null || exportTargetDir != null && !exportUnchanged)) {
+						exportContent = stub(path, content);
+						exportHash = cache.hash(exportContent.duplicate());
+					} else if (exportUnchanged) {
+						exportHash = previous.exportHash;
+					}
+					if (exportTargetDir != null) {
+						writeIfChanged(exportTargetDir.resolve(fileName), exportContent.duplicate(), exportHash,
+								exportUnchanged);
+					}
+					if (unchanged) {
+						unchangedFileCount.increment();
+					}
+					Entry entry = new Entry(size, hash, exported, exportHash);
+					cache.record(moduleName, path, entry);
+					entries.put(path, entry);
+					if (jarPackageDir != null) {
+						eeJarWriter.add(jarPackageDir, fileName, exportContent.duplicate(), exportHash);
+					}
+					if (exportTargetDir != null || jarPackageDir != null) {
+						exportFileCount.increment();
+					}
+					fileCount.increment();
+					byteCount.add(size);
+					progress.update();
+				} catch (IOException e) {
+					System.err.format("could not extract %s/%s\n%s\n", moduleName, path, e);
+					failedFileCount.increment();
+					failed = true;
+				}
+			}
+			// a package with a failed file is extracted again by the next run
+			if (journal != null && !failed) {
+				try {
+					journal.completePackage(moduleName, packageDir, entries);
+					complete = true;
+				} catch (IOException e) {
+					System.err.format("could not journal package %s/%s\n%s\n", moduleName, packageDir, e);
+				}
+			}
+		}
+
+		/**
+		 * @return API-only stub of the class, the class itself if it can not be
+		 *         stubbed
+		 */
+		private ByteBuffer stub(String path, ByteBuffer content) {
+			try {
+				ByteBuffer stub = ClassStubber.stub(content.duplicate());
+				stubCount.increment();
+				stubSourceByteCount.add(content.remaining());
+				stubByteCount.add(stub.remaining());
+				return stub;
+			} catch (IOException e) {
+				System.err.format("could not stub %s/%s - exporting the class file\n%s\n", moduleName, path, e);
+				return content;
+			}
+		}
+
+		private void writeIfChanged(Path targetFile, ByteBuffer content, String hash, boolean unchanged)
+				throws IOException {
+			if (unchanged && Files.exists(targetFile)) {
+				if (journal != null && journal.isResumed()) {
+					// left over by the interrupted extraction
+					Files.deleteIfExists(ReportWriter.toTempFile(targetFile));
+				}
+				return;
+			}
+			writtenByteCount.add(content.remaining());
+			if (contentStore != null) {
+				if (contentStore.materialise(hash, content, targetFile)) {
+					linkedFileCount.increment();
+				}
+				writtenFileCount.increment();
+				return;
+			}
+			// replaces the target, which may also be a link into a content store of an earlier run
+			Path tempFile = ReportWriter.toTempFile(targetFile);
+			try (FileChannel channel = FileChannel.open(tempFile, CREATE, TRUNCATE_EXISTING, WRITE)) {
+				while (content.hasRemaining()) {
+					channel.write(content);
+				}
+			}
+			ReportWriter.moveAtomically(tempFile, targetFile);
+			writtenFileCount.increment();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package io.klib.probe.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to the modules of a JRE image, independent of whether it is
+ * backed by a jrt filesystem, an extracted directory or the jimage file.
+ * Package directories and resource paths are always '/' separated and relative
+ * to the module root.
+ */
+interface JreImage extends Closeable {
+
+	String MODULE_INFO = "module-info.class";
+
+	/**
+	 * @return sorted names of all modules of the image
+	 */
+	List<String> getModules() throws IOException;
+
+	/**
+	 * @return package directory (empty for the module root) to the names of the
+	 *         files it contains
+	 */
+	Map<String, List<String>> getPackageDirs(String module) throws IOException;
+
+	/**
+	 * @return read-only content of the resource, positioned at its first byte
+	 */
+	ByteBuffer read(String module, String path) throws IOException;
+
+	static String toPackageName(String packageDir) {
+		return packageDir.replace('/', '.');
+	}
+
+	static String toPath(String packageDir, String fileName) {
+		return packageDir.isEmpty() ? fileName : packageDir + "/" + fileName;
+	}
+}
@@ -0,0 +1,438 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.klib.probe.java.ChangeSummary.Change;
+import io.klib.probe.java.ProbeMetrics.Phase;
+
+/**
+ * Analysis of a single JRE into its own workspace: reads the module export
+ * table, extracts the image and writes the meta reports. Every probe opens its
+ * own jimage mapping or jrt filesystem, so several probes can run side by side.
+ */
+class JreProbe {
+
+	static final String META_DIR = "meta";
+	static final String EXPLODED_MODULES_DIR = "modules";
+	static final String TARGET_MODULES = "modules";
+	static final String TARGET_PACKAGE_EXPORTS = "packageExports";
+	static final String TARGET_EE_JAR = "eeJar=";
+	private static final String TARGET_STUBS_SUFFIX = "+stubs";
+	private static final String ARTIFACT_EE_JAR = "eeJar";
+	private static final String JRT_PROTOCOL = "jrt:/";
+	private static final String JAVA_BASE = "java.base";
+
+	static final class Options {
+		final int parallelism;
+		final boolean extractModules;
+		final String eeJar;
+		final boolean parallelDeflate;
+		final boolean mappedImage;
+		final boolean stubClasses;
+		final boolean analyseDependencies;
+		final Path contentStore;
+
+		/**
+		 * @param eeJar               name of the ee.j2se jar relative to the
+		 *                            workspace, <code>null</code> to write the
+		 *                            flat export tree instead
+		 * @param stubClasses         export API-only stubs instead of the class
+		 *                            files
+		 * @param analyseDependencies write the package dependency reports
+		 * @param contentStore        directory of the content store shared by
+		 *                            the workspaces, <code>null</code> to write
+		 *                            every file into the workspace
+		 */
+		Options(int parallelism, boolean extractModules, String eeJar, boolean parallelDeflate, boolean mappedImage,
+				boolean stubClasses, boolean analyseDependencies, Path contentStore) {
+			this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+			this.extractModules = extractModules;
+			this.eeJar = eeJar;
+			this.parallelDeflate = parallelDeflate;
+			this.mappedImage = mappedImage;
+			this.stubClasses = stubClasses;
+			this.analyseDependencies = analyseDependencies;
+			this.contentStore = contentStore;
+		}
+
+		Options withParallelism(int parallelism) {
+			return new Options(parallelism, extractModules, eeJar, parallelDeflate, mappedImage, stubClasses,
+					analyseDependencies, contentStore);
+		}
+	}
+
+	static final class Result {
+		final String name;
+		final Path jreHome;
+		final String version;
+		final String identity;
+		final int exportedPackages;
+		final int privatePackages;
+		final boolean changed;
+		final long durationMillis;
+		final Exception failure;
+
+		Result(String name, Path jreHome, String version, String identity, int exportedPackages,
+				int privatePackages, boolean changed, long durationMillis, Exception failure) {
+			this.name = name;
+			this.jreHome = jreHome;
+			this.version = version;
+			this.identity = identity;
+			this.exportedPackages = exportedPackages;
+			this.privatePackages = privatePackages;
+			this.changed = changed;
+			this.durationMillis = durationMillis;
+			this.failure = failure;
+		}
+	}
+
+	private final String name;
+	private final Path jreHome;
+	private final Options options;
+	private final Path wrkPath;
+	private final Path metaPath;
+	private final Path modulesPath;
+	private final Path packageExportPath;
+	private final Path cachePath;
+	private final ChangeSummary changeSummary = new ChangeSummary();
+	private final ProbeMetrics metrics;
+	private String identity;
+
+	/**
+	 * @param jreHome home directory of the JRE, containing <code>release</code>
+	 *                and <code>lib/modules</code>
+	 * @param wrkPath workspace of this JRE, created if missing
+	 */
+	JreProbe(String name, Path jreHome, Path wrkPath, Options options) throws IOException {
+		this.name = name;
+		this.jreHome = jreHome;
+		this.options = options;
+		this.wrkPath = wrkPath;
+		this.metrics = new ProbeMetrics(name);
+		metaPath = Files.createDirectories(wrkPath.resolve(META_DIR));
+		modulesPath = Files.createDirectories(wrkPath.resolve("modules"));
+		packageExportPath = Files.createDirectories(wrkPath.resolve("packageExports"));
+		cachePath = Files.createDirectories(wrkPath.resolve("cache"));
+	}
+
+	ChangeSummary getChangeSummary() {
+		return changeSummary;
+	}
+
+	ProbeMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * runs the complete analysis, failures are reported in the result
+	 */
+	Result run() {
+		return run(true);
+	}
+
+	/**
+	 * The package scan, the dependency analysis and the extraction share one
+	 * pool of the configured parallelism, the report writers mostly wait for
+	 * it.
+	 *
+	 * @param extract extract the image into the workspace, otherwise only the
+	 *                meta reports and the index are written
+	 */
+	@SuppressWarnings("try")
+	Result run(boolean extract) {
+		long startTimeMillis = System.currentTimeMillis();
+		String version = null;
+		ForkJoinPool pool = new ForkJoinPool(options.parallelism);
+		try (JreImage jreImage = openJreImage(jreHome, options.mappedImage, metrics);
+				ReportWriter reportWriter = new ReportWriter(metaPath, options.parallelism, changeSummary,
+						metrics)) {
+			ModuleExportTable exportTable;
+			try (ProbeMetrics.Timer timer = metrics.start(Phase.RESOLVE_EXPORTS)) {
+				exportTable = ModuleExportTable.read(jreImage);
+			}
+			PackageIndex packageIndex = exportTable.getPackageIndex();
+			String jreVersion = getJreVersion(jreHome, exportTable);
+			version = jreVersion;
+
+			// reports only depend on the image and overlap with the extraction
+			MetaReports metaReports = new MetaReports(packageIndex, modulesPath);
+			reportWriter.submit(MetaReports.MODULES_2_PACKAGES, out -> {
+				Map<String, List<String>> mapModule2Packages;
+				try (ProbeMetrics.Timer timer = metrics.start(Phase.SCAN_PACKAGES)) {
+					mapModule2Packages = new PackageScanner(pool).scan(jreImage);
+				}
+				MetaReports.writeModules2Packages(out, mapModule2Packages);
+			});
+			reportWriter.submit(MetaReports.ALL_EXPORTED_PACKAGES, metaReports::writeAllExportedPackages);
+			reportWriter.submit(MetaReports.MODULES_2_EXPORTED_PACKAGES, metaReports::writeModules2ExportedPackages);
+			reportWriter.submit(MetaReports.MODULES_2_PRIVATE_PACKAGES, metaReports::writeModules2PrivatePackages);
+			reportWriter.submit(MetaReports.ALL_PRIVATE_PACKAGES, metaReports::writeAllPrivatePackages);
+			reportWriter.submit(MetaReports.IMPORT_EE_J2SE, metaReports::writeImportEeJ2se);
+			reportWriter.submitBinary(ProbeIndex.FILE_NAME,
+					out -> ProbeIndex.write(out, jreVersion, packageIndex, jreImage));
+			if (options.analyseDependencies) {
+				submitDependencyReports(reportWriter, pool, jreImage, packageIndex);
+			}
+
+			if (extract) {
+				extractRuntimeJar(pool, jreImage, packageIndex, jreVersion);
+			}
+			reportWriter.await();
+			writeMetrics(jreVersion);
+			return new Result(name, jreHome, jreVersion, identity, packageIndex.getAllExportedPackages().size(),
+					packageIndex.getAllNonExportedPackages().size(), changeSummary.hasChanges(),
+					System.currentTimeMillis() - startTimeMillis, null);
+		} catch (IOException | RuntimeException e) {
+			System.err.format("could not analyse JRE %s at %s\n%s\n", name, jreHome, e);
+			writeMetrics(version);
+			return new Result(name, jreHome, version, identity, 0, 0, changeSummary.hasChanges(),
+					System.currentTimeMillis() - startTimeMillis, e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * both reports share one analysis, which runs in the report writer that
+	 * first needs it
+	 */
+	@SuppressWarnings("try")
+	private void submitDependencyReports(ReportWriter reportWriter, ForkJoinPool pool, JreImage jreImage,
+			PackageIndex packageIndex) {
+		FutureTask<List<DependencyAnalyzer.PackageDependencies>> analysis = new FutureTask<>(() -> {
+			try (ProbeMetrics.Timer timer = metrics.start(Phase.DEPENDENCIES)) {
+				return new DependencyAnalyzer(pool, metrics).analyse(jreImage, packageIndex);
+			}
+		});
+		reportWriter.submit(DependencyAnalyzer.PACKAGE_DEPENDENCIES,
+				out -> DependencyAnalyzer.writePackageDependencies(out, getAnalysis(analysis)));
+		reportWriter.submit(DependencyAnalyzer.EXPORTED_TO_PRIVATE,
+				out -> DependencyAnalyzer.writeExportedToPrivate(out, getAnalysis(analysis), packageIndex));
+	}
+
+	private static <T> T getAnalysis(FutureTask<T> analysis) throws IOException {
+		analysis.run();
+		try {
+			return analysis.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("dependency analysis interrupted", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+					: new IOException("dependency analysis failed", e.getCause());
+		}
+	}
+
+	/**
+	 * writes the metrics as JSON next to the reports, a failure only costs the
+	 * metrics
+	 */
+	private void writeMetrics(String version) {
+		try {
+			ReportWriter.write(wrkPath.resolve(ProbeMetrics.FILE_NAME), out -> metrics.writeJson(out, version));
+			System.out.format("phases of JRE %s - %s\n", name, metrics.toSummary());
+		} catch (IOException e) {
+			System.err.format("could not write metrics of JRE %s\n%s\n", name, e);
+		}
+	}
+
+	@SuppressWarnings("try")
+	private static JreImage openJreImage(Path jreHome, boolean mappedImage, ProbeMetrics metrics)
+			throws IOException {
+		try (ProbeMetrics.Timer timer = metrics.start(Phase.OPEN_IMAGE)) {
+			return openJreImage(jreHome, mappedImage);
+		}
+	}
+
+	/**
+	 * opens the image of the JRE, either by mapping its jimage file, through its
+	 * own jrt filesystem or as exploded <code>modules</code> directory
+	 */
+	static JreImage openJreImage(Path jreHome, boolean mappedImage) throws IOException {
+		Path modulesFile = jreHome.resolve("lib").resolve("modules");
+		if (mappedImage && Files.isRegularFile(modulesFile)) {
+			try {
+				return JImageFile.open(modulesFile);
+			} catch (IOException e) {
+				System.err.format("could not map %s - falling back to jrt-fs\n%s\n", modulesFile, e);
+			}
+		}
+		Path explodedModules = jreHome.resolve(EXPLODED_MODULES_DIR);
+		if (!Files.isRegularFile(modulesFile) && Files.isDirectory(explodedModules)) {
+			// exploded image, e.g. of a JDK build or a generated test image
+			return new PathJreImage(explodedModules, null);
+		}
+		if (isRunningJre(jreHome)) {
+			// the jrt filesystem of the running JVM can not be closed
+			return new PathJreImage(FileSystems.getFileSystem(URI.create(JRT_PROTOCOL)).getPath("/modules"), null);
+		}
+		if (!Files.exists(jreHome.resolve("lib").resolve("jrt-fs.jar"))) {
+			throw new IOException("no jimage and no jrt-fs.jar inside " + jreHome);
+		}
+		// the jrt provider loads jrt-fs.jar of the given java.home into its own class loader
+		FileSystem fs = FileSystems.newFileSystem(URI.create(JRT_PROTOCOL),
+				Collections.singletonMap("java.home", jreHome.toString()));
+		return new PathJreImage(fs.getPath("/modules"), fs);
+	}
+
+	private static boolean isRunningJre(Path jreHome) {
+		try {
+			return Files.isSameFile(jreHome, Paths.get(System.getProperty("java.home")));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @throws IOException if the extraction failed, the extraction is not
+	 *                     committed and the jar is not replaced
+	 */
+	@SuppressWarnings("try")
+	private void extractRuntimeJar(ForkJoinPool pool, JreImage jreImage, PackageIndex packageIndex,
+			String version) throws IOException {
+		Optional<Path> eeJarPath = Optional.ofNullable(options.eeJar).map(wrkPath::resolve);
+		Path modulesTarget = options.extractModules ? modulesPath : null;
+		Path packageExportTarget = eeJarPath.isEmpty() ? packageExportPath : null;
+		// exports written with and without stubs are different targets
+		String exportTarget = toExportTarget(TARGET_PACKAGE_EXPORTS);
+		Set<String> targets = new LinkedHashSet<>();
+		if (modulesTarget != null) {
+			targets.add(TARGET_MODULES);
+		}
+		if (packageExportTarget != null) {
+			targets.add(exportTarget);
+		}
+		eeJarPath.ifPresent(j -> targets.add(toExportTarget(TARGET_EE_JAR + options.eeJar)));
+		List<Path> targetPaths = Stream.of(modulesTarget, packageExportTarget, eeJarPath.orElse(null))
+				.filter(Objects::nonNull).collect(Collectors.toList());
+		try {
+			ExtractionCache cache = new ExtractionCache(cachePath);
+			try (ProbeMetrics.Timer timer = metrics.start(Phase.IDENTITY)) {
+				identity = cache.computeIdentity(jreHome);
+			}
+			if (cache.isUpToDate(targets, targetPaths)) {
+				System.out.format("skipped extraction JRE %s is unchanged inside %s\n", identity, wrkPath);
+				if (packageExportTarget != null) {
+					changeSummary.record(TARGET_PACKAGE_EXPORTS, Change.UNCHANGED, "JRE is unchanged");
+				}
+				eeJarPath.ifPresent(j -> changeSummary.record(j.getFileName().toString(), Change.UNCHANGED,
+						"JRE is unchanged"));
+				return;
+			}
+			cache.loadManifests();
+			boolean reuseExports = cache.hasTarget(exportTarget);
+			cache.invalidate();
+			EeJarWriter eeJarWriter = eeJarPath.isPresent() ? new EeJarWriter(eeJarPath.get(),
+					EeJarWriter.createManifest(version, packageIndex.getAllExportedPackages(),
+							options.stubClasses),
+					options.parallelDeflate, cache.getDigest(ARTIFACT_EE_JAR)) : null;
+			try (EeJarWriter writer = eeJarWriter; ExtractionJournal journal = cache.openJournal(targets);
+					ProbeMetrics.Timer timer = metrics.start(Phase.EXTRACT)) {
+				if (journal.isResumed()) {
+					System.out.format("resuming interrupted extraction of JRE %s - %d packages are complete\n",
+							identity, journal.getResumedPackageCount());
+				}
+				ContentStore contentStore = options.contentStore != null ? new ContentStore(options.contentStore)
+						: null;
+				try {
+					new JreExtractor(pool, options.stubClasses, reuseExports, metrics, contentStore)
+							.extract(jreImage, modulesTarget, packageExportTarget, writer, cache, journal,
+									packageIndex);
+				} catch (IOException | RuntimeException e) {
+					if (writer != null) {
+						writer.abort();
+					}
+					throw e;
+				}
+			}
+			removeStaleEntries(cache, modulesTarget, packageExportTarget);
+			if (packageExportTarget != null) {
+				String exportDigest = cache.computeExportDigest();
+				String previousExportDigest = cache.getDigest(exportTarget);
+				changeSummary.record(TARGET_PACKAGE_EXPORTS,
+						reuseExports && exportDigest.equals(previousExportDigest) ? Change.UNCHANGED
+								: previousExportDigest == null ? Change.CREATED : Change.UPDATED,
+						cache.describeExportChanges());
+				cache.setDigest(exportTarget, exportDigest);
+			}
+			if (eeJarWriter != null) {
+				changeSummary.record(eeJarPath.get().getFileName().toString(), eeJarWriter.getChange());
+				cache.setDigest(ARTIFACT_EE_JAR, eeJarWriter.getDigest());
+			}
+			cache.commit(targets);
+			System.out.format("successfully extracted JRE %s into %s\n", identity, wrkPath);
+		} catch (IOException ex) {
+			throw new IOException("could not extract JRE into " + wrkPath, ex);
+		}
+	}
+
+	private String toExportTarget(String target) {
+		return options.stubClasses ? target + TARGET_STUBS_SUFFIX : target;
+	}
+
+	/**
+	 * deletes files which no longer exist from the module tree, and files
+	 * which no module exports anymore from the flat export tree
+	 */
+	private static void removeStaleEntries(ExtractionCache cache, Path modulesTarget, Path packageExportTarget)
+			throws IOException {
+		Set<String> exportedPaths = cache.getExportedPaths();
+		for (Entry<String, Map<String, ExtractionCache.Entry>> module : cache.getRemovedEntries().entrySet()) {
+			for (Entry<String, ExtractionCache.Entry> removed : module.getValue().entrySet()) {
+				if (modulesTarget != null && cache.getCurrent(module.getKey(), removed.getKey()) == null) {
+					Files.deleteIfExists(modulesTarget.resolve(module.getKey()).resolve(removed.getKey()));
+				}
+				// a package of several modules stays exported by the others
+				if (packageExportTarget != null && removed.getValue().exported
+						&& !exportedPaths.contains(removed.getKey())) {
+					Files.deleteIfExists(packageExportTarget.resolve(removed.getKey()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return version of the <code>release</code> file, or of the
+	 *         <code>java.base</code> module if the JRE has no release file
+	 * @throws IOException if the JRE has neither
+	 */
+	static String getJreVersion(Path jreHome, ModuleExportTable exportTable) throws IOException {
+		Path releaseFile = jreHome.resolve("release");
+		if (Files.exists(releaseFile)) {
+			Optional<String> javaVersion = Files.readAllLines(releaseFile, StandardCharsets.ISO_8859_1).stream()
+					.filter(l -> l.startsWith("JAVA_VERSION=")).findFirst()
+					.map(l -> l.replaceAll("JAVA_VERSION=\"?([0-9.]*).*", "$1")).filter(v -> !v.isEmpty());
+			if (javaVersion.isPresent()) {
+				return javaVersion.get();
+			}
+		}
+		ModuleDescriptor javaBase = exportTable.getModuleDescriptors().get(JAVA_BASE);
+		Optional<String> baseVersion = Optional.ofNullable(javaBase).flatMap(ModuleDescriptor::rawVersion)
+				.map(v -> v.replaceAll("([0-9.]*).*", "$1")).filter(v -> !v.isEmpty());
+		if (baseVersion.isPresent()) {
+			return baseVersion.get();
+		}
+		throw new IOException("could not determine the version of JRE at " + jreHome);
+	}
+}
@@ -0,0 +1,69 @@
+package io.klib.probe.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache evicting the least recently used entry. Evicted and replaced
+ * values are closed.
+ */
+final class LruCache<K, V extends Closeable> {
+
+	private final int capacity;
+	private final LinkedHashMap<K, V> mapEntries;
+
+	LruCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.mapEntries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return the cached value, which becomes the most recently used one, or
+	 *         <code>null</code>
+	 */
+	synchronized V get(K key) {
+		return mapEntries.get(key);
+	}
+
+	synchronized void put(K key, V value) {
+		V previous = mapEntries.put(key, value);
+		if (previous != null && previous != value) {
+			close(key, previous);
+		}
+		Iterator<Map.Entry<K, V>> entries = mapEntries.entrySet().iterator();
+		while (mapEntries.size() > capacity && entries.hasNext()) {
+			Map.Entry<K, V> eldest = entries.next();
+			entries.remove();
+			close(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	/**
+	 * @return keys from the least to the most recently used
+	 */
+	synchronized List<K> keys() {
+		return new ArrayList<>(mapEntries.keySet());
+	}
+
+	synchronized int size() {
+		return mapEntries.size();
+	}
+
+	synchronized void clear() {
+		mapEntries.forEach(this::close);
+		mapEntries.clear();
+	}
+
+	private void close(K key, V value) {
+		try {
+			value.close();
+		} catch (IOException e) {
+			System.err.format("could not close cached %s\n%s\n", key, e);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generators of the wrk/meta reports. Each report is streamed line by line
+ * into the given writer, see {@link ReportWriter}.
+ */
+class MetaReports {
+
+	static final String MODULES_2_PACKAGES = "1_modules2packages.txt";
+	static final String ALL_EXPORTED_PACKAGES = "2_allExportedPackages.txt";
+	static final String MODULES_2_EXPORTED_PACKAGES = "2_modules2ExportedPackages.txt";
+	static final String MODULES_2_PRIVATE_PACKAGES = "3_modules2privatePackages.txt";
+	static final String ALL_PRIVATE_PACKAGES = "3_allPrivatePackages.txt";
+	static final String IMPORT_EE_J2SE = "4_import_ee.j2se.txt";
+
+	private static final String NO_IMPORT = ";version=0.0.0;-noimport:=true";
+	private static final String WORKSPACE = "${workspace}";
+	private static final String WORKSPACE_CNF_DIR = "cnf";
+
+	private final PackageIndex packageIndex;
+	private final String modulesReference;
+
+	/**
+	 * @param modulesPath module tree of the probed JRE, referenced by
+	 *                    {@link #IMPORT_EE_J2SE}
+	 */
+	MetaReports(PackageIndex packageIndex, Path modulesPath) {
+		this.packageIndex = packageIndex;
+		this.modulesReference = toWorkspaceReference(modulesPath);
+	}
+
+	/**
+	 * @return directory as <code>${workspace}</code> relative reference if it
+	 *         is inside a bnd workspace, otherwise as absolute path
+	 */
+	static String toWorkspaceReference(Path dir) {
+		Path absoluteDir = dir.toAbsolutePath().normalize();
+		for (Path workspace = absoluteDir.getParent(); workspace != null; workspace = workspace.getParent()) {
+			if (Files.isDirectory(workspace.resolve(WORKSPACE_CNF_DIR))) {
+				return WORKSPACE + "/" + toSlashes(workspace.relativize(absoluteDir)) + "/";
+			}
+		}
+		return toSlashes(absoluteDir) + "/";
+	}
+
+	private static String toSlashes(Path path) {
+		return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+	}
+
+	static void writeModules2Packages(Writer out, Map<String, List<String>> mapModule2packages) throws IOException {
+		out.write("# java modules and there extracted packages / unzipped jrt-fs.jar\n\n");
+		writeList(out, "java modules:\n", mapModule2packages.keySet(), "    ", "", "\n", "\n");
+		out.write("\n");
+		for (Map.Entry<String, List<String>> e : mapModule2packages.entrySet()) {
+			writeModule(out, e.getKey(), e.getValue());
+			out.write("\n");
+		}
+	}
+
+	void writeAllExportedPackages(Writer out) throws IOException {
+		out.write("# all exported packages\n\n");
+		writeList(out, "exported java packages:\n", packageIndex.getAllExportedPackages(), "    ", "", "\n", "\n");
+	}
+
+	void writeModules2ExportedPackages(Writer out) throws IOException {
+		out.write("# Java Modules and their exported packages\n\n");
+		writeModuleSections(out, packageIndex.getMapModuleExportedPackages());
+	}
+
+	void writeModules2PrivatePackages(Writer out) throws IOException {
+		out.write("# Java Modules and their private packages\n\n");
+		writeModuleSections(out, packageIndex.getMapModuleNonExportedPackages());
+	}
+
+	void writeAllPrivatePackages(Writer out) throws IOException {
+		out.write("# all private packages\n\n");
+		writeList(out, "private java packages:\n", packageIndex.getAllNonExportedPackages(), "    ", "", "\n", "\n");
+	}
+
+	/**
+	 * bnd macros to build the ee.j2se bundle from the extracted module tree
+	 */
+	void writeImportEeJ2se(Writer out) throws IOException {
+		Map<String, List<String>> mapModuleExportedPackages = packageIndex.getMapModuleExportedPackages();
+		Map<String, List<String>> mapModulePrivatePackages = packageIndex.getMapModuleNonExportedPackages();
+		List<String> listModuleExportingPackages = modulesWithPackages(mapModuleExportedPackages);
+
+		out.write("# bnd macros for JRE modules and exported packages\n\n");
+		out.write("### export_packages\n\n");
+		writeList(out, "j2see:\\\n", listModuleExportingPackages, "    ${module_", "}", ",\\\n", "\n\n");
+		out.write("\n");
+		for (Map.Entry<String, List<String>> e : mapModuleExportedPackages.entrySet()) {
+			if (!e.getValue().isEmpty()) {
+				writeList(out, String.format("module_%s: \\\n", e.getKey()), e.getValue(), "    ", "",
+						NO_IMPORT + ",\\\n", NO_IMPORT + "\n\n");
+			}
+		}
+		out.write("\n");
+
+		out.write("### includeresource\n\n");
+		writeList(out, "includeresource_j2se:\\\n", listModuleExportingPackages, "    ${include_module_", "}", ",\\\n",
+				"\n");
+		out.write("\n");
+		for (Map.Entry<String, List<String>> e : mapModuleExportedPackages.entrySet()) {
+			if (!e.getValue().isEmpty()) {
+				writePackageDirs(out, String.format("include_module_%s: \\\n", e.getKey()), e.getKey(), e.getValue());
+			}
+		}
+		out.write("\n");
+
+		out.write("### ignore\n\n");
+		writeList(out, "ignore_j2see:\\\n", modulesWithPackages(mapModulePrivatePackages), "    ${ignore_module_", "}",
+				",\\\n", "\n\n");
+		out.write("\n");
+		for (Map.Entry<String, List<String>> e : mapModulePrivatePackages.entrySet()) {
+			writePackageDirs(out, String.format("ignore_module_%s: \\\n", e.getKey()), e.getKey(), e.getValue());
+		}
+	}
+
+	private static void writeModuleSections(Writer out, Map<String, List<String>> mapModule2packages)
+			throws IOException {
+		writeList(out, "java modules:\n", modulesWithPackages(mapModule2packages), "    ", "", "\n", "\n");
+		out.write("\n");
+		for (Map.Entry<String, List<String>> e : mapModule2packages.entrySet()) {
+			writeModule(out, e.getKey(), e.getValue());
+		}
+	}
+
+	private static void writeModule(Writer out, String moduleName, List<String> packages) throws IOException {
+		out.write("# module ");
+		out.write(moduleName);
+		out.write("\n");
+		for (String p : packages) {
+			out.write("    ");
+			out.write(p);
+			out.write("\n");
+		}
+	}
+
+	private void writePackageDirs(Writer out, String header, String moduleName, List<String> packages)
+			throws IOException {
+		out.write(header);
+		String delimiter = "";
+		for (String p : packages) {
+			out.write(delimiter);
+			out.write("    ");
+			out.write(modulesReference);
+			out.write(moduleName);
+			out.write('/');
+			out.write(p.replace('.', '/'));
+			out.write('/');
+			delimiter = ",\\\n";
+		}
+		out.write("\n\n");
+	}
+
+	private static void writeList(Writer out, String prefix, Iterable<String> items, String itemPrefix,
+			String itemSuffix, String delimiter, String suffix) throws IOException {
+		out.write(prefix);
+		String separator = "";
+		for (String item : items) {
+			out.write(separator);
+			out.write(itemPrefix);
+			out.write(item);
+			out.write(itemSuffix);
+			separator = delimiter;
+		}
+		out.write(suffix);
+	}
+
+	private static List<String> modulesWithPackages(Map<String, List<String>> mapModule2packages) {
+		return mapModule2packages.entrySet().stream().filter(e -> !e.getValue().isEmpty()).map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+	}
+}
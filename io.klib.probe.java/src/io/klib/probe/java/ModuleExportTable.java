@@ -0,0 +1,71 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Export table of the modules of a JRE image. The module descriptors are read
+ * from the <code>module-info.class</code> files of the image itself, so the
+ * result is independent of the boot layer of the JVM running the probe.
+ */
+class ModuleExportTable {
+
+	private final Map<String, ModuleDescriptor> mapModuleDescriptors;
+	private final PackageIndex packageIndex;
+
+	private ModuleExportTable(Map<String, ModuleDescriptor> mapModuleDescriptors) {
+		this.mapModuleDescriptors = mapModuleDescriptors;
+		this.packageIndex = PackageIndex.of(mapModuleDescriptors);
+	}
+
+	/**
+	 * reads all module descriptors of the given image in parallel, without
+	 * resolving a module layer
+	 */
+	static ModuleExportTable read(JreImage jreImage) throws IOException {
+		try {
+			Map<String, ModuleDescriptor> mapModuleDescriptors = jreImage.getModules().parallelStream()
+					.map(m -> readDescriptor(jreImage, m)).filter(Objects::nonNull).sorted()
+					.collect(Collectors.toMap(ModuleDescriptor::name, d -> d, (d0, d1) -> d0, LinkedHashMap::new));
+			return new ModuleExportTable(mapModuleDescriptors);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static ModuleDescriptor readDescriptor(JreImage jreImage, String module) {
+		try {
+			Map<String, List<String>> mapPackageDirs = jreImage.getPackageDirs(module);
+			List<String> rootFiles = mapPackageDirs.getOrDefault("", Collections.emptyList());
+			if (!rootFiles.contains(JreImage.MODULE_INFO)) {
+				return null;
+			}
+			// the package finder is only used if the ModulePackages attribute is missing
+			return ModuleDescriptor.read(jreImage.read(module, JreImage.MODULE_INFO),
+					() -> findPackages(mapPackageDirs));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Set<String> findPackages(Map<String, List<String>> mapPackageDirs) {
+		return new HashSet<>(PackageScanner.findPackages(mapPackageDirs));
+	}
+
+	Map<String, ModuleDescriptor> getModuleDescriptors() {
+		return mapModuleDescriptors;
+	}
+
+	PackageIndex getPackageIndex() {
+		return packageIndex;
+	}
+}
@@ -0,0 +1,110 @@
+package io.klib.probe.java;
+
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleDescriptor.Exports;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Index of all packages of a JRE image, built once from the module descriptors
+ * and shared by all phases of the probe. Package names are interned and looked
+ * up in hash tables, so deciding whether a package is exported or private
+ * costs the same for every package, independent of the size of the JRE.
+ */
+final class PackageIndex {
+
+	private final Map<String, String> mapPackage2Module;
+	private final Map<String, Boolean> mapPackage2Exported;
+	private final Map<String, List<String>> mapModuleExportedPackages;
+	private final Map<String, List<String>> mapModuleNonExportedPackages;
+
+	private PackageIndex(int size, int moduleCount) {
+		mapPackage2Module = new HashMap<>(size * 2);
+		mapPackage2Exported = new HashMap<>(size * 2);
+		mapModuleExportedPackages = new LinkedHashMap<>(moduleCount * 2);
+		mapModuleNonExportedPackages = new LinkedHashMap<>(moduleCount * 2);
+	}
+
+	static PackageIndex of(Map<String, ModuleDescriptor> mapModuleDescriptors) {
+		int size = mapModuleDescriptors.values().stream().mapToInt(d -> d.packages().size()).sum();
+		PackageIndex index = new PackageIndex(size, mapModuleDescriptors.size());
+		mapModuleDescriptors.forEach((name, descriptor) -> {
+			String module = name.intern();
+			List<String> exportedPackages = descriptor.exports().stream().filter(Predicate.not(Exports::isQualified))
+					.map(Exports::source).map(String::intern).sorted().collect(Collectors.toList());
+			List<String> nonExportedPackages = new ArrayList<>();
+			exportedPackages.forEach(p -> index.add(p, module, true));
+			descriptor.packages().stream().sorted().map(String::intern).forEach(p -> {
+				if (!index.mapPackage2Exported.containsKey(p)) {
+					index.add(p, module, false);
+					nonExportedPackages.add(p);
+				}
+			});
+			index.mapModuleExportedPackages.put(module, Collections.unmodifiableList(exportedPackages));
+			index.mapModuleNonExportedPackages.put(module, Collections.unmodifiableList(nonExportedPackages));
+		});
+		return index;
+	}
+
+	private void add(String packageName, String module, boolean exported) {
+		mapPackage2Module.put(packageName, module);
+		mapPackage2Exported.put(packageName, exported);
+	}
+
+	boolean contains(String packageName) {
+		return mapPackage2Module.containsKey(packageName);
+	}
+
+	boolean isExported(String packageName) {
+		return mapPackage2Exported.getOrDefault(packageName, Boolean.FALSE);
+	}
+
+	/**
+	 * @return true if the package is exported unqualified by the given module
+	 */
+	boolean isExported(String module, String packageName) {
+		return isExported(packageName) && module.equals(mapPackage2Module.get(packageName));
+	}
+
+	/**
+	 * @return name of the module containing the package or <code>null</code>
+	 */
+	String getModule(String packageName) {
+		return mapPackage2Module.get(packageName);
+	}
+
+	int size() {
+		return mapPackage2Module.size();
+	}
+
+	/**
+	 * @return module name to its sorted, unqualified exported packages
+	 */
+	Map<String, List<String>> getMapModuleExportedPackages() {
+		return Collections.unmodifiableMap(mapModuleExportedPackages);
+	}
+
+	/**
+	 * @return module name to its sorted packages which are not exported
+	 *         unqualified
+	 */
+	Map<String, List<String>> getMapModuleNonExportedPackages() {
+		return Collections.unmodifiableMap(mapModuleNonExportedPackages);
+	}
+
+	List<String> getAllExportedPackages() {
+		return mapModuleExportedPackages.values().stream().flatMap(List::stream).sorted()
+				.collect(Collectors.toList());
+	}
+
+	List<String> getAllNonExportedPackages() {
+		return mapModuleNonExportedPackages.values().stream().flatMap(List::stream).sorted()
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,92 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Discovers the packages of all modules of a {@link JreImage}. Each module is
+ * traversed exactly once, the package directories and their files are taken
+ * from that single traversal, and the modules are scanned in parallel. As it
+ * works on the image itself, no extracted module tree is needed.
+ */
+class PackageScanner {
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final int parallelism;
+	private final ForkJoinPool sharedPool;
+
+	PackageScanner(int parallelism) {
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		this.sharedPool = null;
+	}
+
+	/**
+	 * @param sharedPool pool the modules are scanned in, it is not shut down
+	 */
+	PackageScanner(ForkJoinPool sharedPool) {
+		this.parallelism = sharedPool.getParallelism();
+		this.sharedPool = sharedPool;
+	}
+
+	/**
+	 * @return module name to the sorted names of its packages, modules in the
+	 *         order of the image
+	 */
+	Map<String, List<String>> scan(JreImage jreImage) throws IOException {
+		List<String> modules = jreImage.getModules();
+		ForkJoinPool pool = sharedPool != null ? sharedPool : new ForkJoinPool(parallelism);
+		try {
+			Map<String, List<String>> mapModule2Packages = pool.submit(() -> modules.parallelStream()
+					.collect(Collectors.toConcurrentMap(m -> m, m -> scanModule(jreImage, m)))).get();
+			Map<String, List<String>> mapOrdered = new LinkedHashMap<>();
+			modules.forEach(m -> mapOrdered.put(m, mapModule2Packages.get(m)));
+			return mapOrdered;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("scan of JRE packages interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException("scan of JRE packages failed", e.getCause());
+		} finally {
+			if (pool != sharedPool) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static List<String> scanModule(JreImage jreImage, String module) {
+		try {
+			return findPackages(jreImage.getPackageDirs(module));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return sorted names of the package directories which contain at least one
+	 *         class file, the module root is never a package
+	 */
+	static List<String> findPackages(Map<String, List<String>> mapPackageDir2Files) {
+		return mapPackageDir2Files.entrySet().stream().filter(e -> !e.getKey().isEmpty())
+				.filter(e -> containsClassFile(e.getValue())).map(e -> JreImage.toPackageName(e.getKey())).sorted()
+				.collect(Collectors.toList());
+	}
+
+	private static boolean containsClassFile(List<String> files) {
+		for (String file : files) {
+			if (file.endsWith(CLASS_SUFFIX)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,98 @@
+package io.klib.probe.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link JreImage} backed by a directory tree of modules, e.g. jrt:/modules of a
+ * jrt filesystem or an already extracted module folder. The package
+ * directories of a module are walked once and kept for later phases.
+ */
+class PathJreImage implements JreImage {
+
+	private final Path root;
+	private final Closeable owner;
+	// every module is traversed once, all phases share the result
+	private final Map<String, Map<String, List<String>>> mapModulePackageDirs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param owner resource closed together with this image (e.g. the jrt
+	 *              filesystem of a foreign JRE), may be <code>null</code>
+	 */
+	PathJreImage(Path root, Closeable owner) {
+		this.root = root;
+		this.owner = owner;
+	}
+
+	Path getRoot() {
+		return root;
+	}
+
+	@Override
+	public List<String> getModules() throws IOException {
+		try (Stream<Path> modules = Files.list(root)) {
+			return modules.filter(Files::isDirectory).map(m -> m.getFileName().toString()).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	@Override
+	public Map<String, List<String>> getPackageDirs(String module) throws IOException {
+		Map<String, List<String>> mapPackageDirs = mapModulePackageDirs.get(module);
+		if (mapPackageDirs == null) {
+			mapPackageDirs = Collections.unmodifiableMap(walkModule(module));
+			mapModulePackageDirs.putIfAbsent(module, mapPackageDirs);
+		}
+		return mapPackageDirs;
+	}
+
+	private Map<String, List<String>> walkModule(String module) throws IOException {
+		// group all files of the module by their package directory in one traversal
+		Path modulePath = root.resolve(module);
+		String separator = root.getFileSystem().getSeparator();
+		Map<String, List<String>> mapPackageDir2Files = new LinkedHashMap<>();
+		Files.walkFileTree(modulePath, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile()) {
+					String packageDir = modulePath.relativize(file.getParent()).toString().replace(separator, "/");
+					mapPackageDir2Files.computeIfAbsent(packageDir, d -> new ArrayList<>())
+							.add(file.getFileName().toString());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return mapPackageDir2Files;
+	}
+
+	@Override
+	public ByteBuffer read(String module, String path) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(root.resolve(module).resolve(path))).asReadOnlyBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (owner != null) {
+			owner.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return root.toUri().toString();
+	}
+}
@@ -0,0 +1,90 @@
+package io.klib.probe.java;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Standalone entry point of the probe, no OSGi framework required, e.g.
+ * <code>java -cp io.klib.probe.java.jar io.klib.probe.java.ProbeCli jrePath=/opt/jdk-11</code>.
+ * Start-up is reduced by a class data sharing archive created with
+ * <code>createCdsArchive=probe.jsa</code> and used with
+ * <code>-XX:SharedArchiveFile=probe.jsa</code>.
+ */
+public final class ProbeCli {
+
+	static final String ARG_CREATE_CDS_ARCHIVE = "createCdsArchive=";
+	static final int EXIT_OK = 0;
+	static final int EXIT_FAILURE = 1;
+	static final int EXIT_USAGE = 2;
+
+	private static final Map<String, String> ARGUMENTS = new LinkedHashMap<>();
+	static {
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_JRE_PATH, "home directory or archive of the JRE, default the running JRE");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_JRE_PATHS, "comma separated JREs analysed in one batch");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_BATCH_PARALLELISM, "number of JREs analysed concurrently, default 2");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_DIFF, "two comma separated JREs whose API is compared");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_PARALLELISM, "worker threads, default the available processors");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_EXTRACT_MODULES, "true|false - extract the exported classes, default true");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_STUB_CLASSES, "true|false - extract API-only class stubs, default false");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_DEPENDENCIES,
+				"true|false - write the package dependency reports, default true");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_CONTENT_STORE,
+				"directory of a content store shared by the JREs, hard links identical files, relative to wrk");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_EE_JAR, "file name of the execution environment jar");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_PARALLEL_DEFLATE, "true|false - deflate jar entries in parallel");
+		ARGUMENTS.put(AnalyseJavaRuntime.ARG_IMAGE_READER,
+				"mapped|jrt|jrtfs - reader of the modules image, jrtfs is an alias of jrt, default mapped");
+		ARGUMENTS.put(ARG_CREATE_CDS_ARCHIVE, "creates a class data sharing archive by a training run");
+	}
+
+	private ProbeCli() {
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(Arrays.asList(args)));
+	}
+
+	/**
+	 * @return exit code of the command line
+	 */
+	static int run(List<String> args) {
+		if (args.contains("-h") || args.contains("--help") || args.contains("help")) {
+			printUsage();
+			return EXIT_OK;
+		}
+		List<String> invalidArgs = new ArrayList<>();
+		for (String arg : args) {
+			if (ARGUMENTS.keySet().stream().noneMatch(arg::startsWith)) {
+				invalidArgs.add(arg);
+			}
+		}
+		if (!invalidArgs.isEmpty()) {
+			System.err.format("unknown arguments %s - see --help\n", invalidArgs);
+			return EXIT_USAGE;
+		}
+
+		Optional<String> cdsArchive = args.stream().filter(a -> a.startsWith(ARG_CREATE_CDS_ARCHIVE)).findFirst();
+		if (cdsArchive.isPresent()) {
+			String archive = cdsArchive.get().substring(ARG_CREATE_CDS_ARCHIVE.length()).trim();
+			if (archive.isEmpty()) {
+				System.err.format("%s expects the file of the archive\n", ARG_CREATE_CDS_ARCHIVE);
+				return EXIT_USAGE;
+			}
+			List<String> trainingArgs = new ArrayList<>(args);
+			trainingArgs.remove(cdsArchive.get());
+			return CdsArchive.create(Paths.get(archive).toAbsolutePath(), trainingArgs) ? EXIT_OK : EXIT_FAILURE;
+		}
+		return new AnalyseJavaRuntime(args).run() ? EXIT_OK : EXIT_FAILURE;
+	}
+
+	private static void printUsage() {
+		System.out.format("usage: java [-XX:SharedArchiveFile=<archive>] -cp <classpath> %s [name=value]...\n",
+				ProbeCli.class.getName());
+		ARGUMENTS.forEach((name, description) -> System.out.format("  %-20s %s\n", name, description));
+	}
+}
@@ -0,0 +1,371 @@
+package io.klib.probe.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Persistent binary index of the modules, packages and classes of a JRE. The
+ * index is written next to the meta reports and queried through a read-only
+ * memory mapping, lookups binary search the sorted tables inside the mapping
+ * and only decode the strings they return.
+ *
+ * <pre>
+ * header      magic, format version, offset and size of all tables, JRE version
+ * strings     u2 length + UTF-8 bytes, referenced by their offset
+ * modules     name, package count, exported package count - sorted by name
+ * packages    name, module index, flags - sorted by name
+ * classes     internal name, package index - sorted by name
+ * </pre>
+ *
+ * All numbers are big-endian, names are sorted by their unsigned UTF-8 bytes.
+ */
+final class ProbeIndex implements Closeable {
+
+	static final String FILE_NAME = "jre.index";
+	static final int MAGIC = 0x4B4A4958;
+	static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 48;
+	private static final int MODULE_ENTRY_SIZE = 12;
+	private static final int PACKAGE_ENTRY_SIZE = 8;
+	private static final int CLASS_ENTRY_SIZE = 8;
+	private static final int FLAG_EXPORTED = 1;
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final FileChannel channel;
+	private final ByteBuffer index;
+	private final int stringTable;
+	private final int moduleTable;
+	private final int moduleCount;
+	private final int packageTable;
+	private final int packageCount;
+	private final int classTable;
+	private final int classCount;
+	private final int jreVersion;
+
+	private ProbeIndex(FileChannel channel, ByteBuffer index) throws IOException {
+		this.channel = channel;
+		this.index = index;
+		if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+			throw new IOException("not a probe index");
+		}
+		int formatVersion = index.getShort(4) & 0xFFFF;
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException(String.format("unsupported probe index format %d, expected %d", formatVersion,
+					FORMAT_VERSION));
+		}
+		stringTable = index.getInt(8);
+		moduleTable = index.getInt(16);
+		moduleCount = index.getInt(20);
+		packageTable = index.getInt(24);
+		packageCount = index.getInt(28);
+		classTable = index.getInt(32);
+		classCount = index.getInt(36);
+		jreVersion = index.getInt(40);
+		if (classTable + (long) classCount * CLASS_ENTRY_SIZE > index.capacity()
+				|| stringTable + (long) index.getInt(12) > index.capacity()) {
+			throw new IOException("truncated probe index");
+		}
+	}
+
+	/**
+	 * maps the index read-only, the mapping is released by the garbage
+	 * collector once the index is no longer referenced
+	 */
+	static ProbeIndex open(Path indexFile) throws IOException {
+		FileChannel channel = FileChannel.open(indexFile, READ);
+		try {
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ProbeIndex(channel, index);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	String getJreVersion() {
+		return getString(jreVersion);
+	}
+
+	int getModuleCount() {
+		return moduleCount;
+	}
+
+	int getPackageCount() {
+		return packageCount;
+	}
+
+	int getClassCount() {
+		return classCount;
+	}
+
+	/**
+	 * @return sorted names of all modules
+	 */
+	List<String> getModules() {
+		List<String> modules = new ArrayList<>(moduleCount);
+		for (int i = 0; i < moduleCount; i++) {
+			modules.add(getModuleName(i));
+		}
+		return modules;
+	}
+
+	/**
+	 * @return sorted names of all packages exported unqualified
+	 */
+	List<String> getExportedPackages() {
+		List<String> packages = new ArrayList<>();
+		for (int p = 0; p < packageCount; p++) {
+			if (isPackageExported(p)) {
+				packages.add(getString(index.getInt(packageTable + p * PACKAGE_ENTRY_SIZE)));
+			}
+		}
+		return packages;
+	}
+
+	boolean containsModule(String module) {
+		return search(moduleTable, MODULE_ENTRY_SIZE, moduleCount, module) >= 0;
+	}
+
+	/**
+	 * @return name of the module containing the package, exported or not
+	 */
+	Optional<String> getModuleOfPackage(String packageName) {
+		int p = search(packageTable, PACKAGE_ENTRY_SIZE, packageCount, packageName);
+		return p < 0 ? Optional.empty() : Optional.of(getModuleName(getPackageModule(p)));
+	}
+
+	/**
+	 * @return name of the module exporting the package unqualified
+	 */
+	Optional<String> getExportingModule(String packageName) {
+		int p = search(packageTable, PACKAGE_ENTRY_SIZE, packageCount, packageName);
+		return p < 0 || !isPackageExported(p) ? Optional.empty() : Optional.of(getModuleName(getPackageModule(p)));
+	}
+
+	boolean isPackageExported(String packageName) {
+		int p = search(packageTable, PACKAGE_ENTRY_SIZE, packageCount, packageName);
+		return p >= 0 && isPackageExported(p);
+	}
+
+	/**
+	 * @param className binary (java.util.Map$Entry) or internal
+	 *                  (java/util/Map$Entry) class name
+	 * @return name of the module containing the class
+	 */
+	Optional<String> getModuleOfClass(String className) {
+		int c = search(classTable, CLASS_ENTRY_SIZE, classCount, toInternalName(className));
+		return c < 0 ? Optional.empty() : Optional.of(getModuleName(getPackageModule(getClassPackage(c))));
+	}
+
+	/**
+	 * @return true if the class belongs to an exported package and therefore
+	 *         to the execution environment
+	 */
+	boolean isClassExported(String className) {
+		int c = search(classTable, CLASS_ENTRY_SIZE, classCount, toInternalName(className));
+		return c >= 0 && isPackageExported(getClassPackage(c));
+	}
+
+	private static String toInternalName(String className) {
+		return className.replace('.', '/');
+	}
+
+	private String getModuleName(int module) {
+		return getString(index.getInt(moduleTable + module * MODULE_ENTRY_SIZE));
+	}
+
+	private int getPackageModule(int p) {
+		return index.getShort(packageTable + p * PACKAGE_ENTRY_SIZE + 4) & 0xFFFF;
+	}
+
+	private boolean isPackageExported(int p) {
+		return (index.getShort(packageTable + p * PACKAGE_ENTRY_SIZE + 6) & FLAG_EXPORTED) != 0;
+	}
+
+	private int getClassPackage(int c) {
+		return index.getInt(classTable + c * CLASS_ENTRY_SIZE + 4);
+	}
+
+	private String getString(int ref) {
+		int offset = stringTable + ref;
+		byte[] bytes = new byte[index.getShort(offset) & 0xFFFF];
+		index.duplicate().position(offset + 2).get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * binary search over a table whose entries start with a string reference
+	 *
+	 * @return index of the entry or a negative value if it is missing
+	 */
+	private int search(int table, int entrySize, int count, String name) {
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(stringTable + index.getInt(table + mid * entrySize), key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private int compare(int offset, byte[] key) {
+		int length = index.getShort(offset) & 0xFFFF;
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = (index.get(offset + 2 + i) & 0xFF) - (key[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - key.length;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * writes the index of all packages of the image and the classes they
+	 * contain
+	 */
+	static void write(OutputStream out, String jreVersion, PackageIndex packageIndex, JreImage jreImage)
+			throws IOException {
+		Comparator<byte[]> byUtf8 = Arrays::compareUnsigned;
+		StringTable strings = new StringTable();
+
+		List<String> modules = new ArrayList<>(jreImage.getModules());
+		modules.sort(Comparator.comparing(StringTable::utf8, byUtf8));
+		Map<String, Integer> mapModuleIndex = new HashMap<>();
+		modules.forEach(m -> mapModuleIndex.put(m, mapModuleIndex.size()));
+
+		List<String> packages = new ArrayList<>(packageIndex.getAllExportedPackages());
+		packages.addAll(packageIndex.getAllNonExportedPackages());
+		packages.sort(Comparator.comparing(StringTable::utf8, byUtf8));
+		Map<String, Integer> mapPackageIndex = new HashMap<>();
+		packages.forEach(p -> mapPackageIndex.put(p, mapPackageIndex.size()));
+
+		List<String[]> classes = new ArrayList<>();
+		for (String module : modules) {
+			for (Map.Entry<String, List<String>> packageDir : jreImage.getPackageDirs(module).entrySet()) {
+				String packageName = JreImage.toPackageName(packageDir.getKey());
+				if (!module.equals(packageIndex.getModule(packageName))) {
+					continue;
+				}
+				for (String fileName : packageDir.getValue()) {
+					if (fileName.endsWith(CLASS_SUFFIX)) {
+						classes.add(new String[] { JreImage.toPath(packageDir.getKey(),
+								fileName.substring(0, fileName.length() - CLASS_SUFFIX.length())), packageName });
+					}
+				}
+			}
+		}
+		classes.sort(Comparator.comparing(c -> StringTable.utf8(c[0]), byUtf8));
+
+		ByteArrayOutputStream tableBytes = new ByteArrayOutputStream(
+				modules.size() * MODULE_ENTRY_SIZE + packages.size() * PACKAGE_ENTRY_SIZE
+						+ classes.size() * CLASS_ENTRY_SIZE);
+		DataOutputStream tables = new DataOutputStream(tableBytes);
+		for (String module : modules) {
+			int exportedCount = packageIndex.getMapModuleExportedPackages().getOrDefault(module, List.of()).size();
+			int privateCount = packageIndex.getMapModuleNonExportedPackages().getOrDefault(module, List.of()).size();
+			tables.writeInt(strings.add(module));
+			tables.writeInt(exportedCount + privateCount);
+			tables.writeInt(exportedCount);
+		}
+		for (String packageName : packages) {
+			tables.writeInt(strings.add(packageName));
+			tables.writeShort(mapModuleIndex.get(packageIndex.getModule(packageName)));
+			tables.writeShort(packageIndex.isExported(packageName) ? FLAG_EXPORTED : 0);
+		}
+		for (String[] classEntry : classes) {
+			tables.writeInt(strings.add(classEntry[0]));
+			tables.writeInt(mapPackageIndex.get(classEntry[1]));
+		}
+		int versionRef = strings.add(jreVersion);
+
+		int moduleTable = HEADER_SIZE;
+		int packageTable = moduleTable + modules.size() * MODULE_ENTRY_SIZE;
+		int classTable = packageTable + packages.size() * PACKAGE_ENTRY_SIZE;
+		int stringTable = classTable + classes.size() * CLASS_ENTRY_SIZE;
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.writeShort(FORMAT_VERSION);
+		header.writeShort(0);
+		header.writeInt(stringTable);
+		header.writeInt(strings.size());
+		header.writeInt(moduleTable);
+		header.writeInt(modules.size());
+		header.writeInt(packageTable);
+		header.writeInt(packages.size());
+		header.writeInt(classTable);
+		header.writeInt(classes.size());
+		header.writeInt(versionRef);
+		header.writeInt(0);
+		tableBytes.writeTo(header);
+		strings.writeTo(header);
+		header.flush();
+	}
+
+	/**
+	 * deduplicated strings, each stored once as u2 length and UTF-8 bytes
+	 */
+	private static final class StringTable {
+		private final Map<String, Integer> mapOffsets = new HashMap<>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		static byte[] utf8(String value) {
+			return value.getBytes(StandardCharsets.UTF_8);
+		}
+
+		int add(String value) throws IOException {
+			Integer offset = mapOffsets.get(value);
+			if (offset == null) {
+				byte[] utf8 = utf8(value);
+				if (utf8.length > 0xFFFF) {
+					throw new IOException("name too long for the probe index - " + value);
+				}
+				offset = bytes.size();
+				out.writeShort(utf8.length);
+				out.write(utf8);
+				mapOffsets.put(value, offset);
+			}
+			return offset;
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		void writeTo(OutputStream target) throws IOException {
+			bytes.writeTo(target);
+		}
+	}
+}
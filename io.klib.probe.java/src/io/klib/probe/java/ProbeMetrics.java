@@ -0,0 +1,174 @@
+package io.klib.probe.java;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Phase timers and counters of a single probe. Phases may run concurrently,
+ * their durations are accumulated per phase. A phase started while another
+ * one runs on the same thread is not counted twice, its duration is only
+ * accounted to the inner phase, so the phases are disjoint. Every finished
+ * phase is also committed as {@link ProbePhaseEvent} if the runtime contains
+ * JFR.
+ */
+final class ProbeMetrics {
+
+	static final String FILE_NAME = "metrics.json";
+
+	enum Phase {
+		OPEN_IMAGE("openImage"), RESOLVE_EXPORTS("resolveExports"), IDENTITY("identity"),
+		SCAN_PACKAGES("scanPackages"), DEPENDENCIES("dependencies"), EXTRACT("extract"), REPORTS("reports");
+
+		final String key;
+
+		Phase(String key) {
+			this.key = key;
+		}
+	}
+
+	enum Counter {
+		FILES("files"), BYTES("bytes"), EXPORTED_FILES("exportedFiles"), UNCHANGED_FILES("unchangedFiles"),
+		WRITTEN_FILES("writtenFiles"), WRITTEN_BYTES("writtenBytes"), STUBBED_CLASSES("stubbedClasses"),
+		LINKED_FILES("linkedFiles"), RESUMED_FILES("resumedFiles"), ANALYSED_CLASSES("analysedClasses"),
+		REPORTS("reports"), CHANGED_REPORTS("changedReports");
+
+		final String key;
+
+		Counter(String key) {
+			this.key = key;
+		}
+	}
+
+	private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+	private final String jre;
+	private final long startNanos = System.nanoTime();
+	private final LongAdder[] phaseNanos = newAdders(Phase.values().length);
+	private final LongAdder[] phaseCounts = newAdders(Phase.values().length);
+	private final LongAdder[] counters = newAdders(Counter.values().length);
+	private final ThreadLocal<Timer> runningTimer = new ThreadLocal<>();
+
+	ProbeMetrics(String jre) {
+		this.jre = jre;
+	}
+
+	/**
+	 * times a phase until the returned timer is closed
+	 */
+	Timer start(Phase phase) {
+		return new Timer(phase);
+	}
+
+	void add(Counter counter, long value) {
+		counters[counter.ordinal()].add(value);
+	}
+
+	long get(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()].sum();
+	}
+
+	long getCount(Phase phase) {
+		return phaseCounts[phase.ordinal()].sum();
+	}
+
+	/**
+	 * @return one line with the duration of every finished phase
+	 */
+	String toSummary() {
+		return Arrays.stream(Phase.values()).filter(p -> getCount(p) > 0)
+				.map(p -> String.format("%s %d ms", p.key, getNanos(p) / 1_000_000))
+				.collect(Collectors.joining(", "));
+	}
+
+	void writeJson(Writer out, String version) throws IOException {
+		out.write("{\n");
+		out.write(String.format("  \"jre\": %s,\n", quote(jre)));
+		out.write(String.format("  \"version\": %s,\n", quote(version)));
+		out.write(String.format(Locale.ROOT, "  \"durationMillis\": %.3f,\n",
+				(System.nanoTime() - startNanos) / 1_000_000d));
+		out.write("  \"phases\": {");
+		out.write(Arrays.stream(Phase.values()).filter(p -> getCount(p) > 0)
+				.map(p -> String.format(Locale.ROOT, "\n    \"%s\": { \"millis\": %.3f, \"count\": %d }", p.key,
+						getNanos(p) / 1_000_000d, getCount(p)))
+				.collect(Collectors.joining(",")));
+		out.write("\n  },\n");
+		out.write("  \"counters\": {");
+		out.write(Arrays.stream(Counter.values())
+				.map(c -> String.format("\n    \"%s\": %d", c.key, get(c))).collect(Collectors.joining(",")));
+		out.write("\n  }\n}\n");
+	}
+
+	private static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static LongAdder[] newAdders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		Arrays.setAll(adders, i -> new LongAdder());
+		return adders;
+	}
+
+	/**
+	 * the jdk.jfr module is optional, e.g. in jlinked runtimes or OSGi
+	 * frameworks not exporting it
+	 */
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, ProbeMetrics.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	final class Timer implements AutoCloseable {
+		private final Phase phase;
+		private final Timer outer = runningTimer.get();
+		private final long timerStartNanos = System.nanoTime();
+		private final Object event;
+		private long innerNanos;
+
+		private Timer(Phase phase) {
+			this.phase = phase;
+			this.event = JFR_AVAILABLE ? ProbePhaseEvent.start() : null;
+			runningTimer.set(this);
+		}
+
+		@Override
+		public void close() {
+			long nanos = System.nanoTime() - timerStartNanos;
+			phaseNanos[phase.ordinal()].add(nanos - innerNanos);
+			phaseCounts[phase.ordinal()].increment();
+			if (outer != null) {
+				outer.innerNanos += nanos;
+				runningTimer.set(outer);
+			} else {
+				runningTimer.remove();
+			}
+			if (event != null) {
+				ProbePhaseEvent.finish(event, jre, phase.key);
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package io.klib.probe.java;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a finished {@link ProbeMetrics.Phase}, recorded with e.g.
+ * <code>-XX:StartFlightRecording=filename=probe.jfr</code>. Only referenced
+ * through the static methods, so the probe runs without the jdk.jfr module.
+ */
+@Name("io.klib.probe.Phase")
+@Label("Probe Phase")
+@Category({ "klib", "JRE Probe" })
+@Description("Phase of the analysis of a JRE")
+class ProbePhaseEvent extends Event {
+
+	@Label("JRE")
+	String jre;
+
+	@Label("Phase")
+	String phase;
+
+	/**
+	 * @return the started event, <code>null</code> if the event is disabled
+	 */
+	static Object start() {
+		ProbePhaseEvent event = new ProbePhaseEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void finish(Object startedEvent, String jre, String phase) {
+		ProbePhaseEvent event = (ProbePhaseEvent) startedEvent;
+		event.end();
+		if (event.shouldCommit()) {
+			event.jre = jre;
+			event.phase = phase;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package io.klib.probe.java;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Throttled progress of a long running phase. On a console a single line is
+ * rewritten a few times per second, otherwise e.g. in CI logs a line is
+ * appended every few seconds. {@link #update()} is cheap enough to be called
+ * per file from any thread.
+ */
+final class ProgressLine {
+
+	private static final long CONSOLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+	private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	private final String label;
+	private final LongSupplier files;
+	private final LongSupplier bytes;
+	private final PrintStream out;
+	private final boolean console;
+	private final long intervalNanos;
+	private final AtomicLong nextNanos;
+	private volatile boolean printed;
+
+	ProgressLine(String label, LongSupplier files, LongSupplier bytes) {
+		this(label, files, bytes, System.out, System.console() != null);
+	}
+
+	ProgressLine(String label, LongSupplier files, LongSupplier bytes, PrintStream out, boolean console) {
+		this.label = label;
+		this.files = files;
+		this.bytes = bytes;
+		this.out = out;
+		this.console = console;
+		this.intervalNanos = console ? CONSOLE_INTERVAL_NANOS : LOG_INTERVAL_NANOS;
+		this.nextNanos = new AtomicLong(System.nanoTime() + intervalNanos);
+	}
+
+	/**
+	 * prints the progress if the interval elapsed, only one thread prints per
+	 * interval
+	 */
+	void update() {
+		long now = System.nanoTime();
+		long next = nextNanos.get();
+		if (now - next < 0 || !nextNanos.compareAndSet(next, now + intervalNanos)) {
+			return;
+		}
+		String progress = String.format("%s %d files, %.1f MB", label, files.getAsLong(),
+				bytes.getAsLong() / (1024d * 1024d));
+		synchronized (out) {
+			if (console) {
+				out.print("\r" + progress);
+				out.flush();
+			} else {
+				out.println(progress);
+			}
+		}
+		printed = true;
+	}
+
+	/**
+	 * clears the console line, so the following output starts at its begin
+	 */
+	void finish() {
+		if (console && printed) {
+			synchronized (out) {
+				out.print("\r\033[K");
+				out.flush();
+			}
+		}
+	}
+}
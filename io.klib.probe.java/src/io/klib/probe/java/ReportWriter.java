@@ -0,0 +1,182 @@
+package io.klib.probe.java;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.klib.probe.java.ChangeSummary.Change;
+import io.klib.probe.java.ProbeMetrics.Counter;
+import io.klib.probe.java.ProbeMetrics.Phase;
+
+import static java.nio.file.StandardCopyOption.*;
+
+/**
+ * Writes reports as independent background tasks. Every report is streamed
+ * into a buffered UTF-8 writer on a temporary file next to its target, which
+ * atomically replaces the target once the report is complete, so readers
+ * never see partial content and no stale bytes of a previous longer report
+ * survive. A target with the same digest as the new report is left untouched
+ * to keep its timestamp for incremental builds.
+ */
+class ReportWriter implements Closeable {
+
+	@FunctionalInterface
+	interface Report {
+		void write(Writer out) throws IOException;
+	}
+
+	@FunctionalInterface
+	interface BinaryReport {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private final Path reportDir;
+	private final ChangeSummary changeSummary;
+	private final ProbeMetrics metrics;
+	private final ExecutorService executor;
+	private final List<Future<Change>> pendingReports = new ArrayList<>();
+
+	ReportWriter(Path reportDir, int parallelism, ChangeSummary changeSummary, ProbeMetrics metrics) {
+		this.reportDir = reportDir;
+		this.changeSummary = changeSummary;
+		this.metrics = metrics;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+			Thread thread = new Thread(r, "report-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * schedules the report, it is written concurrently to the caller
+	 */
+	void submit(String fileName, Report report) {
+		submitBinary(fileName, toBinaryReport(report));
+	}
+
+	/**
+	 * schedules a report with binary content, phases timed by the report are
+	 * not part of its {@link Phase#REPORTS} time
+	 */
+	@SuppressWarnings("try")
+	void submitBinary(String fileName, BinaryReport report) {
+		Path reportFile = reportDir.resolve(fileName);
+		pendingReports.add(executor.submit(() -> {
+			Change change;
+			try (ProbeMetrics.Timer timer = metrics.start(Phase.REPORTS)) {
+				change = writeBinary(reportFile, report);
+			}
+			changeSummary.record(fileName, change);
+			metrics.add(Counter.REPORTS, 1);
+			if (change != Change.UNCHANGED) {
+				metrics.add(Counter.CHANGED_REPORTS, 1);
+			}
+			return change;
+		}));
+	}
+
+	/**
+	 * waits for all scheduled reports
+	 *
+	 * @throws IOException of the first failed report, all other reports are
+	 *                     still completed
+	 */
+	void await() throws IOException {
+		IOException failure = null;
+		for (Future<Change> report : pendingReports) {
+			try {
+				report.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("writing reports interrupted", e);
+			} catch (ExecutionException e) {
+				IOException reportFailure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+						: new IOException("writing report failed", e.getCause());
+				if (failure == null) {
+					failure = reportFailure;
+				} else {
+					failure.addSuppressed(reportFailure);
+				}
+			}
+		}
+		pendingReports.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	static Change write(Path reportFile, Report report) throws IOException {
+		return writeBinary(reportFile, toBinaryReport(report));
+	}
+
+	static Change writeBinary(Path reportFile, BinaryReport report) throws IOException {
+		Path tempFile = toTempFile(reportFile);
+		try {
+			MessageDigest digest = ExtractionCache.newDigest();
+			try (OutputStream out = new DigestOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempFile)), digest)) {
+				report.write(out);
+			}
+			return replaceIfChanged(tempFile, reportFile, ExtractionCache.toHex(digest.digest()));
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static BinaryReport toBinaryReport(Report report) {
+		return out -> {
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			report.write(writer);
+			writer.flush();
+		};
+	}
+
+	/**
+	 * moves the temporary file onto the target unless the target already has
+	 * the given digest
+	 */
+	static Change replaceIfChanged(Path tempFile, Path targetFile, String digest) throws IOException {
+		boolean exists = Files.exists(targetFile);
+		if (exists && digest.equals(ExtractionCache.hashFile(targetFile))) {
+			Files.delete(tempFile);
+			return Change.UNCHANGED;
+		}
+		moveAtomically(tempFile, targetFile);
+		return exists ? Change.UPDATED : Change.CREATED;
+	}
+
+	/**
+	 * @return hidden sibling of the target, created with default permissions
+	 */
+	static Path toTempFile(Path targetFile) {
+		return targetFile.resolveSibling("." + targetFile.getFileName() + ".tmp");
+	}
+
+	static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, REPLACE_EXISTING, ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
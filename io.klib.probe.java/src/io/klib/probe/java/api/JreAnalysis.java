@@ -0,0 +1,54 @@
+package io.klib.probe.java.api;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Analysis result of a single JRE, backed by the binary index written by the
+ * probe. Lookups of packages and classes are answered without rescanning the
+ * JRE.
+ */
+@ProviderType
+public interface JreAnalysis {
+
+	/**
+	 * @return the analysed JRE home directory or archive
+	 */
+	Path getJrePath();
+
+	String getVersion();
+
+	/**
+	 * @return sorted names of all modules
+	 */
+	List<String> getModules();
+
+	/**
+	 * @return sorted names of all packages exported unqualified
+	 */
+	List<String> getExportedPackages();
+
+	/**
+	 * @return name of the module containing the package, exported or not
+	 */
+	Optional<String> getModuleOfPackage(String packageName);
+
+	/**
+	 * @return name of the module exporting the package unqualified
+	 */
+	Optional<String> getExportingModule(String packageName);
+
+	/**
+	 * @param className binary or internal class name
+	 * @return name of the module containing the class
+	 */
+	Optional<String> getModuleOfClass(String className);
+
+	/**
+	 * @return true if the class is part of the execution environment
+	 */
+	boolean isClassExported(String className);
+}
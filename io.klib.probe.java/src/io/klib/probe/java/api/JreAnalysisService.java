@@ -0,0 +1,39 @@
+package io.klib.probe.java.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Analyses JREs on demand and keeps the latest analyses in memory, so repeated
+ * queries for the same JRE are answered without rescanning it. A cached
+ * analysis is refreshed as soon as the JRE changed on disk.
+ */
+@ProviderType
+public interface JreAnalysisService {
+
+	/**
+	 * @param jrePath home directory or zip/tar.gz archive of a JRE
+	 * @return the cached analysis or a new analysis of the JRE
+	 */
+	JreAnalysis analyse(Path jrePath) throws IOException;
+
+	/**
+	 * writes the API diff report of both JREs
+	 *
+	 * @return the diff report
+	 */
+	Path diff(Path fromJrePath, Path toJrePath) throws IOException;
+
+	/**
+	 * @return JRE paths of the cached analyses, most recently used last
+	 */
+	List<Path> getCachedJres();
+
+	/**
+	 * drops all cached analyses
+	 */
+	void clearCache();
+}
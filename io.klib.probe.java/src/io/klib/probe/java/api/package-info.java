@@ -0,0 +1,10 @@
+/**
+ * Service API of the JRE probe, registered as OSGi service by the probe
+ * bundle.
+ */
+@Export
+@Version("1.0.0")
+package io.klib.probe.java.api;
+
+import org.osgi.annotation.bundle.Export;
+import org.osgi.annotation.versioning.Version;
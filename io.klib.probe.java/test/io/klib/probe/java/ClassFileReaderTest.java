@@ -0,0 +1,54 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class ClassFileReaderTest {
+
+	static Path runtimeClass(String path) {
+		// jrt:/<module>/<path> URIs are only mapped below /modules since Java 13
+		return FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules", path);
+	}
+
+	private static ClassFileReader readRuntimeClass(String path) throws IOException {
+		return new ClassFileReader(ByteBuffer.wrap(Files.readAllBytes(runtimeClass(path))));
+	}
+
+	@Test
+	public void testClassHeaderAndMembers() throws IOException {
+		ClassFileReader reader = readRuntimeClass("java.base/java/lang/Integer.class");
+
+		assertEquals("java/lang/Integer", reader.getClassName());
+		assertEquals("java/lang/Number", reader.getSuperName());
+		assertTrue(reader.getInterfaces().contains("java/lang/Comparable"));
+		assertTrue(reader.isApi());
+		assertTrue(reader.getMethods().stream().filter(ClassFileReader.Member::isApi).map(Object::toString)
+				.collect(Collectors.toSet()).contains("parseInt(Ljava/lang/String;)I"));
+		assertTrue(reader.getFields().stream().map(Object::toString).collect(Collectors.toSet())
+				.contains("MAX_VALUE I"));
+		assertFalse(reader.getFields().stream().filter(f -> f.name.equals("value")).findFirst().get().isApi());
+	}
+
+	@Test
+	public void testModuleInfoIsNoApi() throws IOException {
+		ClassFileReader reader = readRuntimeClass("java.base/module-info.class");
+
+		assertFalse(reader.isApi());
+		assertNull(reader.getSuperName());
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedClassFile() throws IOException {
+		byte[] content = Files.readAllBytes(runtimeClass("java.base/java/lang/Integer.class"));
+		new ClassFileReader(ByteBuffer.wrap(content, 0, content.length / 2));
+	}
+}
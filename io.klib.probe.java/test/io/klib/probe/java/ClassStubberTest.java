@@ -0,0 +1,49 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class ClassStubberTest {
+
+	private static ByteBuffer readRuntimeClass(String path) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(ClassFileReaderTest.runtimeClass(path)));
+	}
+
+	private static List<String> api(List<ClassFileReader.Member> members) {
+		return members.stream().filter(ClassFileReader.Member::isApi).map(m -> m.access + " " + m).sorted()
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testStubKeepsApiAndDropsPrivateMembers() throws IOException {
+		ByteBuffer classFile = readRuntimeClass("java.base/java/util/HashMap.class");
+		ClassFileReader original = new ClassFileReader(classFile.duplicate());
+
+		ByteBuffer stubFile = ClassStubber.stub(classFile.duplicate());
+		ClassFileReader stub = new ClassFileReader(stubFile.duplicate());
+
+		assertTrue(stubFile.remaining() < classFile.remaining() / 2);
+		assertTrue(stub.getConstantCount() < original.getConstantCount());
+		assertEquals(original.getClassName(), stub.getClassName());
+		assertEquals(original.getSuperName(), stub.getSuperName());
+		assertEquals(original.getInterfaces(), stub.getInterfaces());
+		assertEquals(api(original.getFields()), api(stub.getFields()));
+		assertEquals(api(original.getMethods()), api(stub.getMethods()));
+		assertTrue(stub.getFields().stream().noneMatch(f -> (f.access & ClassFileReader.ACC_PRIVATE) != 0));
+		assertTrue(stub.getMethods().stream().noneMatch(m -> m.name.equals("<clinit>")));
+	}
+
+	@Test
+	public void testStubIsStable() throws IOException {
+		ByteBuffer stub = ClassStubber.stub(readRuntimeClass("java.base/java/lang/Thread.class"));
+
+		assertEquals(stub, ClassStubber.stub(stub.duplicate()));
+	}
+}
@@ -0,0 +1,81 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentStoreTest {
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-store");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testIdenticalContentIsStoredOnce() throws IOException {
+		ContentStore store = new ContentStore(tempDir.resolve("store"));
+		ByteBuffer content = ByteBuffer.wrap("class".getBytes(StandardCharsets.UTF_8));
+		String hash = ExtractionCache
+				.toHex(ExtractionCache.newDigest().digest("class".getBytes(StandardCharsets.UTF_8)));
+		Path first = Files.createDirectories(tempDir.resolve("jre1")).resolve("A.class");
+		Path second = Files.createDirectories(tempDir.resolve("jre2")).resolve("A.class");
+
+		boolean linked = store.materialise(hash, content.duplicate(), first);
+		store.materialise(hash, content.duplicate(), second);
+
+		assertEquals("class", Files.readString(second));
+		if (linked) {
+			assertTrue(Files.isSameFile(first, second));
+		}
+		try (Stream<Path> objects = Files.walk(tempDir.resolve("store"))) {
+			assertEquals(1, objects.filter(Files::isRegularFile).count());
+		}
+	}
+
+	@Test
+	public void testRelinkingSameObjectLeavesNoTempFile() throws IOException {
+		ContentStore store = new ContentStore(tempDir.resolve("store"));
+		Path targetDir = Files.createDirectories(tempDir.resolve("jre"));
+		Path target = targetDir.resolve("A.class");
+		store.materialise("0a", ByteBuffer.wrap(new byte[] { 1 }), target);
+
+		store.materialise("0a", ByteBuffer.wrap(new byte[] { 1 }), target);
+
+		assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(target));
+		try (Stream<Path> files = Files.list(targetDir)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	public void testReplacedTargetKeepsStoredObject() throws IOException {
+		ContentStore store = new ContentStore(tempDir.resolve("store"));
+		Path target = tempDir.resolve("A.class");
+		Path object = store.store("0a", ByteBuffer.wrap(new byte[] { 1 }));
+		store.materialise("0a", ByteBuffer.wrap(new byte[] { 1 }), target);
+
+		store.materialise("0b", ByteBuffer.wrap(new byte[] { 2, 2 }), target);
+
+		assertArrayEquals(new byte[] { 2, 2 }, Files.readAllBytes(target));
+		assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(object));
+	}
+}
@@ -0,0 +1,63 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.klib.probe.java.DependencyAnalyzer.PackageDependencies;
+import io.klib.probe.java.DependencyAnalyzer.Reference;
+
+public class DependencyAnalyzerTest {
+
+	@Test
+	public void testGraphOfSyntheticImage() throws IOException {
+		// every class references the previous package by a public field
+		SyntheticJreImage image = new SyntheticJreImage(3, 4, 5, 0.5, 0);
+		PackageIndex packageIndex = ModuleExportTable.read(image).getPackageIndex();
+		ProbeMetrics metrics = new ProbeMetrics("synthetic");
+
+		List<PackageDependencies> packages = new DependencyAnalyzer(2, metrics).analyse(image, packageIndex);
+
+		assertEquals(12, packages.size());
+		assertEquals(image.getClassCount(), metrics.get(ProbeMetrics.Counter.ANALYSED_CLASSES));
+		Map<String, PackageDependencies> mapPackages = packages.stream()
+				.collect(Collectors.toMap(p -> p.packageName, p -> p));
+		for (int m = 0; m < 3; m++) {
+			for (int p = 1; p < 4; p++) {
+				PackageDependencies dependencies = mapPackages.get(image.packageName(m, p));
+				assertEquals(image.isExported(p), dependencies.exported);
+				Reference reference = dependencies.mapPackage2Reference.get(image.packageName(m, p - 1));
+				assertEquals(5, reference.classes);
+				assertEquals(image.isExported(p), reference.api);
+				assertTrue(dependencies.mapPackage2Reference.containsKey("java.lang"));
+			}
+		}
+		// the first package of the first module only references itself and java.lang
+		assertEquals(1, mapPackages.get(image.packageName(0, 0)).mapPackage2Reference.size());
+	}
+
+	@Test
+	public void testExportedToPrivateReferencesOfRuntime() throws IOException {
+		try (JreImage jreImage = JreProbe.openJreImage(Paths.get(System.getProperty("java.home")), true)) {
+			PackageIndex packageIndex = ModuleExportTable.read(jreImage).getPackageIndex();
+			List<PackageDependencies> packages = new DependencyAnalyzer(0, new ProbeMetrics("runtime"))
+					.analyse(jreImage, packageIndex);
+
+			PackageDependencies javaLang = packages.stream().filter(p -> p.packageName.equals("java.lang"))
+					.findFirst().get();
+			assertTrue(javaLang.exported);
+			assertTrue(javaLang.mapPackage2Reference.containsKey("jdk.internal.misc"));
+			StringWriter out = new StringWriter();
+			DependencyAnalyzer.writeExportedToPrivate(out, packages, packageIndex);
+			assertTrue(out.toString().contains("java.base java.lang\n    "));
+			assertFalse(out.toString().contains("    java.util "));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EeJarWriterTest {
+
+	private static final List<String> FILES = Arrays.asList("java/lang/Object.class", "java/lang/String.class",
+			"java/lang/ref/Reference.class", "java/io/File.class", "java/util/List.class");
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-jar");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testJarIsIndependentOfEntryOrder() throws IOException {
+		List<String> reversed = new ArrayList<>(FILES);
+		Collections.reverse(reversed);
+
+		Path first = writeJar("first.jar", FILES, true);
+		Path second = writeJar("second.jar", reversed, false);
+
+		assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+		List<String> names = new ArrayList<>();
+		try (JarInputStream in = new JarInputStream(Files.newInputStream(first))) {
+			assertEquals("ee.j2se", in.getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+			JarEntry entry;
+			while ((entry = in.getNextJarEntry()) != null) {
+				if (!entry.isDirectory()) {
+					names.add(entry.getName());
+					assertEquals(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		assertEquals(Arrays.asList("java/io/File.class", "java/lang/Object.class", "java/lang/String.class",
+				"java/lang/ref/Reference.class", "java/util/List.class"), names);
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertEquals(2, files.count());
+		}
+	}
+
+	@Test
+	public void testJarExceedingTheEntryLimitFails() throws IOException {
+		Path jarFile = tempDir.resolve("large.jar");
+		EeJarWriter writer = new EeJarWriter(jarFile,
+				EeJarWriter.createManifest("11.0.2", Collections.emptyList(), false), true, null);
+		// META-INF/, the manifest and the package directory
+		for (int i = 3; i < EeJarWriter.MAX_ENTRIES; i++) {
+			writer.add("p", "C" + i + ".class", ByteBuffer.allocate(0), "");
+		}
+		try {
+			writer.add("p", "Last.class", ByteBuffer.allocate(0), "");
+			fail("jar with more than " + EeJarWriter.MAX_ENTRIES + " entries");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("zip64 is not supported"));
+			writer.abort();
+		}
+		writer.close();
+
+		assertFalse(Files.exists(jarFile));
+	}
+
+	private Path writeJar(String fileName, List<String> paths, boolean parallelDeflate) throws IOException {
+		Path jarFile = tempDir.resolve(fileName);
+		try (EeJarWriter writer = new EeJarWriter(jarFile,
+				EeJarWriter.createManifest("11.0.2", Arrays.asList("java.lang", "java.io"), false), parallelDeflate,
+				null)) {
+			for (String path : paths) {
+				int slash = path.lastIndexOf('/');
+				byte[] content = path.getBytes(StandardCharsets.UTF_8);
+				writer.add(path.substring(0, slash), path.substring(slash + 1), ByteBuffer.wrap(content),
+						ExtractionCache.toHex(ExtractionCache.newDigest().digest(content)));
+			}
+		}
+		return jarFile;
+	}
+}
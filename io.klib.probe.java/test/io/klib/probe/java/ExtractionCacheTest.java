@@ -0,0 +1,86 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.klib.probe.java.ExtractionCache.Entry;
+
+public class ExtractionCacheTest {
+
+	private static final Set<String> TARGETS = Collections.singleton(JreProbe.TARGET_PACKAGE_EXPORTS);
+	private static final String PATH = "java/lang/Object.class";
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-cache");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testExportDigestFollowsWrittenContent() throws IOException {
+		ExtractionCache classes = newCache();
+		classes.record("java.base", PATH, new Entry(1, "class", true));
+		ExtractionCache stubs = newCache();
+		stubs.record("java.base", PATH, new Entry(1, "class", true, "stub"));
+		ExtractionCache otherStubs = newCache();
+		otherStubs.record("java.base", PATH, new Entry(1, "class", true, "stub2"));
+
+		assertNotEquals(classes.computeExportDigest(), stubs.computeExportDigest());
+		assertNotEquals(stubs.computeExportDigest(), otherStubs.computeExportDigest());
+	}
+
+	@Test
+	public void testPathMovedToOtherModuleStaysExported() throws IOException {
+		ExtractionCache cache = newCache();
+		cache.record("java.desktop", PATH, new Entry(1, "class", true, "stub"));
+		cache.commit(TARGETS);
+
+		ExtractionCache moved = newCache();
+		moved.loadManifests();
+		moved.record("java.base", PATH, new Entry(1, "class", true, "stub"));
+
+		assertTrue(moved.getRemovedEntries().get("java.desktop").containsKey(PATH));
+		assertTrue(moved.getExportedPaths().contains(PATH));
+		assertEquals("stub", moved.getPrevious("java.desktop", PATH).exportHash);
+	}
+
+	@Test
+	public void testMissingTargetIsNotUpToDate() throws IOException {
+		Path exportTree = Files.createDirectories(tempDir.resolve("packageExports"));
+		Files.write(exportTree.resolve("Object.class"), new byte[] { 1 });
+		newCache().commit(TARGETS);
+
+		assertTrue(newCache().isUpToDate(TARGETS, Arrays.asList(exportTree)));
+		// the probe creates the trees up front, an emptied tree is missing
+		Files.delete(exportTree.resolve("Object.class"));
+		assertFalse(newCache().isUpToDate(TARGETS, Arrays.asList(exportTree)));
+		Files.delete(exportTree);
+		assertFalse(newCache().isUpToDate(TARGETS, Arrays.asList(exportTree)));
+	}
+
+	private ExtractionCache newCache() throws IOException {
+		ExtractionCache cache = new ExtractionCache(tempDir.resolve("cache"));
+		cache.computeIdentity(Files.createDirectories(tempDir.resolve("jre")));
+		return cache;
+	}
+}
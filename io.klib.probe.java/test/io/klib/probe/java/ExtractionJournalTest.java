@@ -0,0 +1,87 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.klib.probe.java.ExtractionCache.Entry;
+
+public class ExtractionJournalTest {
+
+	private static final Set<String> TARGETS = Collections.singleton(JreProbe.TARGET_PACKAGE_EXPORTS);
+
+	private Path cachePath;
+
+	@Before
+	public void setUp() throws IOException {
+		cachePath = Files.createTempDirectory("probe-journal");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(cachePath)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testCompletedPackagesAreResumed() throws IOException {
+		try (ExtractionJournal journal = ExtractionJournal.open(cachePath, "jre1", TARGETS)) {
+			assertFalse(journal.isResumed());
+			journal.completePackage("java.base", "java/lang", entries("java/lang/Object.class"));
+			journal.completePackage("java.base", "", entries("module-info.class"));
+			journal.completeModule("java.base");
+			journal.completePackage("java.sql", "java/sql", entries("java/sql/Date.class"));
+		}
+		// a block torn by a crash
+		Files.writeString(cachePath.resolve(ExtractionJournal.FILE_NAME), "E\tjava.sql\tjavax/sql/DataSource.cl",
+				StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+		try (ExtractionJournal journal = ExtractionJournal.open(cachePath, "jre1", TARGETS)) {
+			assertTrue(journal.isResumed());
+			assertEquals(3, journal.getResumedPackageCount());
+			assertTrue(journal.isModuleComplete("java.base"));
+			assertFalse(journal.isModuleComplete("java.sql"));
+			assertEquals("1", journal.getCompletedPackage("java.base", "java/lang").get("java/lang/Object.class").hash);
+			assertNotNull(journal.getCompletedPackage("java.base", ""));
+			assertNull(journal.getCompletedPackage("java.sql", "javax/sql"));
+			journal.completePackage("java.sql", "javax/sql", entries("javax/sql/DataSource.class"));
+		}
+		try (ExtractionJournal journal = ExtractionJournal.open(cachePath, "jre1", TARGETS)) {
+			assertEquals(Collections.singleton("javax/sql/DataSource.class"),
+					journal.getCompletedPackage("java.sql", "javax/sql").keySet());
+		}
+	}
+
+	@Test
+	public void testJournalOfOtherJreIsDiscarded() throws IOException {
+		try (ExtractionJournal journal = ExtractionJournal.open(cachePath, "jre1", TARGETS)) {
+			journal.completePackage("java.base", "java/lang", entries("java/lang/Object.class"));
+		}
+
+		try (ExtractionJournal journal = ExtractionJournal.open(cachePath, "jre2", TARGETS)) {
+			assertFalse(journal.isResumed());
+			assertNull(journal.getCompletedPackage("java.base", "java/lang"));
+		}
+	}
+
+	private static Map<String, Entry> entries(String path) {
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		entries.put(path, new Entry(1, "1", true));
+		return entries;
+	}
+}
@@ -0,0 +1,148 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JreArchiveTest {
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-archive");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testZipIsUnpackedToJreHome() throws IOException {
+		Path archive = tempDir.resolve("jdk-11.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+			zip.putNextEntry(new ZipEntry("jdk-11/lib/modules"));
+			zip.write("modules".getBytes(StandardCharsets.UTF_8));
+			zip.putNextEntry(new ZipEntry("jdk-11/release"));
+			zip.write("JAVA_VERSION=\"11\"".getBytes(StandardCharsets.UTF_8));
+		}
+
+		Path jreHome = JreArchive.toJreHome(archive, tempDir.resolve("unpack"));
+
+		assertEquals(tempDir.resolve("unpack").resolve("jdk-11").toRealPath(), jreHome.toRealPath());
+		assertEquals("modules", Files.readString(jreHome.resolve("lib").resolve("modules")));
+		assertEquals("jdk-11", JreArchive.baseName(archive));
+		assertEquals(jreHome, JreArchive.toJreHome(jreHome, tempDir.resolve("unused")));
+	}
+
+	@Test
+	public void testTarIsUnpackedWithLinks() throws IOException {
+		Path archive = writeTar("jdk-11.tar.gz", out -> {
+			writeTarEntry(out, "jdk-11/lib/", '5', "", null);
+			writeTarEntry(out, "jdk-11/lib/modules", '0', "", "modules");
+			writeTarEntry(out, "jdk-11/lib/current", '2', "modules", null);
+			writeTarEntry(out, "jdk-11/lib/copy", '1', "jdk-11/lib/modules", null);
+		});
+
+		Path jreHome = JreArchive.toJreHome(archive, tempDir.resolve("unpack"));
+
+		assertEquals("modules", Files.readString(jreHome.resolve("lib").resolve("current")));
+		assertEquals("modules", Files.readString(jreHome.resolve("lib").resolve("copy")));
+	}
+
+	@Test
+	public void testTarLinkOutsideTargetIsRejected() throws IOException {
+		Files.createDirectories(tempDir.resolve("outside"));
+		Path archive = writeTar("evil.tar.gz", out -> {
+			writeTarEntry(out, "jdk-11/lib/modules", '0', "", "modules");
+			writeTarEntry(out, "jdk-11/escape", '2', "../../outside", null);
+			writeTarEntry(out, "jdk-11/escape/x/evil", '0', "", "evil");
+		});
+
+		assertRejected(archive, tempDir.resolve("outside").resolve("x").resolve("evil"));
+	}
+
+	@Test
+	public void testTarEntryThroughLinkedParentIsRejected() throws IOException {
+		// both links are inside on their own, together they lead out of the target
+		Path archive = writeTar("evil.tar.gz", out -> {
+			writeTarEntry(out, "jdk-11/lib/modules", '0', "", "modules");
+			writeTarEntry(out, "dir/", '5', "", null);
+			writeTarEntry(out, "inner", '2', ".", null);
+			writeTarEntry(out, "inner/dir/out", '2', "../..", null);
+			writeTarEntry(out, "inner/dir/out/x/evil", '0', "", "evil");
+		});
+
+		assertRejected(archive, tempDir.resolve("x").resolve("evil"));
+	}
+
+	private void assertRejected(Path archive, Path outsideFile) {
+		try {
+			JreArchive.unpack(archive, tempDir.resolve("unpack"));
+			fail("entry written outside of the target");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("outside of target directory"));
+		}
+		assertFalse(Files.exists(outsideFile));
+	}
+
+	private interface TarContent {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private Path writeTar(String fileName, TarContent content) throws IOException {
+		Path archive = tempDir.resolve(fileName);
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+			content.write(out);
+			out.write(new byte[1024]);
+		}
+		return archive;
+	}
+
+	private static void writeTarEntry(OutputStream out, String name, char type, String linkName, String content)
+			throws IOException {
+		byte[] data = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		byte[] header = new byte[512];
+		put(header, 0, name);
+		put(header, 100, "0000644");
+		put(header, 124, String.format("%011o", data.length));
+		put(header, 136, "00000000000");
+		header[156] = (byte) type;
+		put(header, 157, linkName);
+		put(header, 257, "ustar");
+		put(header, 263, "00");
+		put(header, 148, "        ");
+		int checksum = 0;
+		for (byte b : header) {
+			checksum += b & 0xFF;
+		}
+		put(header, 148, String.format("%06o\0 ", checksum));
+		out.write(header);
+		ByteArrayOutputStream padded = new ByteArrayOutputStream();
+		padded.write(data);
+		padded.write(new byte[(512 - data.length % 512) % 512]);
+		padded.writeTo(out);
+	}
+
+	private static void put(byte[] header, int offset, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+}
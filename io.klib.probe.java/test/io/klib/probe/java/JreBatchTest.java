@@ -0,0 +1,58 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JreBatchTest {
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-batch");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testEveryJreGetsItsOwnWorkspace() throws IOException {
+		SyntheticJreImage small = new SyntheticJreImage(2, 4, 2, 0.5, 0);
+		SyntheticJreImage large = new SyntheticJreImage(3, 4, 2, 0.25, 0);
+		Path first = tempDir.resolve("a").resolve("jre");
+		Path second = tempDir.resolve("b").resolve("jre");
+		small.writeExploded(first);
+		large.writeExploded(second);
+		Path wrkPath = tempDir.resolve("wrk");
+		JreProbe.Options options = new JreProbe.Options(2, false, null, false, true, false, false, null);
+
+		List<JreProbe.Result> results = new JreBatch(wrkPath, options, 2)
+				.run(Arrays.asList(first, second, tempDir.resolve("missing")));
+
+		assertEquals(3, results.size());
+		assertNull(results.get(0).failure);
+		assertEquals(small.getExportedPackageCount(), results.get(0).exportedPackages);
+		assertNull(results.get(1).failure);
+		assertEquals("jre_2", results.get(1).name);
+		assertEquals(large.getExportedPackageCount(), results.get(1).exportedPackages);
+		assertNotNull(results.get(2).failure);
+		for (String name : Arrays.asList("jre", "jre_2")) {
+			assertTrue(Files.exists(wrkPath.resolve(name).resolve(JreProbe.META_DIR).resolve(MetaReports.IMPORT_EE_J2SE)));
+		}
+	}
+}
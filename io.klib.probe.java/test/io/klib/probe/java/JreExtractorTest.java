@@ -0,0 +1,140 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JreExtractorTest {
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-extractor");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testFailedFileFailsExtractionAndKeepsJar() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(2, 3, 2, 0.5, 0);
+		JreImage brokenImage = brokenImage(image, null, image.className(1, 0, 1) + ".class");
+		PackageIndex packageIndex = ModuleExportTable.read(image).getPackageIndex();
+		Path jarFile = tempDir.resolve("ee.j2se.jar");
+		Files.write(jarFile, new byte[] { 1 });
+		ExtractionCache cache = new ExtractionCache(Files.createDirectories(tempDir.resolve("cache")));
+		JreExtractor extractor = new JreExtractor(2, false, false, new ProbeMetrics("broken"), null);
+
+		try (EeJarWriter writer = new EeJarWriter(jarFile, EeJarWriter.createManifest(SyntheticJreImage.VERSION,
+				packageIndex.getAllExportedPackages(), false), true, null)) {
+			try {
+				extractor.extract(brokenImage, tempDir.resolve("modules"), null, writer, cache, null, packageIndex);
+				fail("extraction with a broken file succeeded");
+			} catch (IOException e) {
+				writer.abort();
+			}
+		}
+
+		assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(jarFile));
+		assertFalse(Files.exists(ReportWriter.toTempFile(jarFile)));
+	}
+
+	@Test
+	public void testSharedPoolIsNotShutDown() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(3, 3, 2, 0.5, 0);
+		PackageIndex packageIndex = ModuleExportTable.read(image).getPackageIndex();
+		ExtractionCache cache = new ExtractionCache(Files.createDirectories(tempDir.resolve("cache")));
+		ProbeMetrics metrics = new ProbeMetrics("shared");
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertEquals(3, new PackageScanner(pool).scan(image).size());
+			new DependencyAnalyzer(pool, metrics).analyse(image, packageIndex);
+			new JreExtractor(pool, false, false, metrics, null).extract(image, tempDir.resolve("modules"), null,
+					null, cache, null, packageIndex);
+
+			assertFalse(pool.isShutdown());
+			assertEquals(image.getClassCount() + 3, metrics.get(ProbeMetrics.Counter.FILES));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnreadableModuleFailsExtraction() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(2, 3, 2, 0.5, 0);
+
+		assertExtractionFails(brokenImage(image, SyntheticJreImage.moduleName(1), null), image);
+	}
+
+	@Test
+	public void testUncreatablePackageDirFailsExtraction() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(2, 3, 2, 0.5, 0);
+		// a file in place of the module directory
+		Files.createDirectories(tempDir.resolve("modules"));
+		Files.write(tempDir.resolve("modules").resolve(SyntheticJreImage.moduleName(1)), new byte[] { 1 });
+
+		assertExtractionFails(image, image);
+	}
+
+	private void assertExtractionFails(JreImage jreImage, SyntheticJreImage image) throws IOException {
+		PackageIndex packageIndex = ModuleExportTable.read(image).getPackageIndex();
+		ExtractionCache cache = new ExtractionCache(Files.createDirectories(tempDir.resolve("cache")));
+		try {
+			new JreExtractor(2, false, false, new ProbeMetrics("broken"), null).extract(jreImage,
+					tempDir.resolve("modules"), null, null, cache, null, packageIndex);
+			fail("extraction with a broken module succeeded");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("module or package dirs"));
+		}
+	}
+
+	/**
+	 * @return image failing to list the given module and to read the given
+	 *         path
+	 */
+	private static JreImage brokenImage(SyntheticJreImage image, String brokenModule, String brokenPath) {
+		return new JreImage() {
+			@Override
+			public List<String> getModules() throws IOException {
+				return image.getModules();
+			}
+
+			@Override
+			public Map<String, List<String>> getPackageDirs(String module) throws IOException {
+				if (module.equals(brokenModule)) {
+					throw new IOException("broken " + module);
+				}
+				return image.getPackageDirs(module);
+			}
+
+			@Override
+			public ByteBuffer read(String module, String path) throws IOException {
+				if (path.equals(brokenPath)) {
+					throw new IOException("broken " + path);
+				}
+				return image.read(module, path);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+}
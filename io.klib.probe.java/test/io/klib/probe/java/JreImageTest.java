@@ -0,0 +1,77 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.spi.ToolProvider;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class JreImageTest {
+
+	private static final Path JAVA_HOME = Paths.get(System.getProperty("java.home"));
+
+	@Test
+	public void testJrtImageOfRunningJre() throws IOException {
+		try (JreImage jreImage = JreProbe.openJreImage(JAVA_HOME, false)) {
+			assertTrue(jreImage.getModules().contains("java.base"));
+			assertTrue(jreImage.getPackageDirs("java.base").get("java/lang").contains("Object.class"));
+			ByteBuffer content = jreImage.read("java.base", "java/lang/Object.class");
+			assertEquals("java/lang/Object", new ClassFileReader(content).getClassName());
+		}
+	}
+
+	@Test
+	public void testMappedImageMatchesJrtImage() throws IOException {
+		try (JreImage jrtImage = JreProbe.openJreImage(JAVA_HOME, false);
+				JreImage mappedImage = JreProbe.openJreImage(JAVA_HOME, true)) {
+			assertEquals(new TreeSet<>(jrtImage.getModules()), new TreeSet<>(mappedImage.getModules()));
+			assertEquals(jrtImage.read("java.base", "java/lang/Object.class"),
+					mappedImage.read("java.base", "java/lang/Object.class"));
+		}
+	}
+
+	@Test
+	public void testMappedImageInflatesCompressedResources() throws IOException {
+		ToolProvider jlink = ToolProvider.findFirst("jlink").orElse(null);
+		Assume.assumeNotNull(jlink);
+		Path tempDir = Files.createTempDirectory("probe-jlink");
+		try {
+			Path jreHome = tempDir.resolve("jre");
+			StringWriter out = new StringWriter();
+			int exitCode = jlink.run(new PrintWriter(out), new PrintWriter(out), "--compress=2", "--add-modules",
+					"java.base", "--output", jreHome.toString());
+			assertEquals(out.toString(), 0, exitCode);
+
+			try (JreImage jrtImage = JreProbe.openJreImage(jreHome, false);
+					JreImage mappedImage = JreProbe.openJreImage(jreHome, true)) {
+				Map<String, List<String>> packageDirs = mappedImage.getPackageDirs("java.base");
+				int resources = 0;
+				for (String packageDir : new String[] { "java/lang", "java/util", "java/util/concurrent" }) {
+					for (String fileName : packageDirs.get(packageDir)) {
+						String path = packageDir + "/" + fileName;
+						assertEquals(path, jrtImage.read("java.base", path), mappedImage.read("java.base", path));
+						resources++;
+					}
+				}
+				assertTrue(resources > 500);
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(tempDir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+}
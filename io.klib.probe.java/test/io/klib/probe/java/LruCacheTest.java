@@ -0,0 +1,55 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+	private static class Value implements Closeable {
+		boolean closed;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		LruCache<String, Value> cache = new LruCache<>(2);
+		Value a = new Value();
+		Value b = new Value();
+		Value c = new Value();
+		cache.put("a", a);
+		cache.put("b", b);
+		assertSame(a, cache.get("a"));
+
+		cache.put("c", c);
+
+		assertEquals(Arrays.asList("a", "c"), cache.keys());
+		assertNull(cache.get("b"));
+		assertTrue(b.closed);
+		assertFalse(a.closed);
+		assertFalse(c.closed);
+	}
+
+	@Test
+	public void testClosesReplacedAndClearedValues() {
+		LruCache<String, Value> cache = new LruCache<>(2);
+		Value first = new Value();
+		Value second = new Value();
+		cache.put("a", first);
+		cache.put("a", second);
+		assertTrue(first.closed);
+		assertEquals(1, cache.size());
+
+		cache.clear();
+
+		assertTrue(second.closed);
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,46 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetaReportsTest {
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-reports");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testModulesOfBatchWorkspaceAreReferencedInsideBndWorkspace() throws IOException {
+		Files.createDirectories(tempDir.resolve("cnf"));
+		Path modulesPath = tempDir.resolve("io.klib.probe.java").resolve("wrk").resolve("jdk-11").resolve("modules");
+
+		assertEquals("${workspace}/io.klib.probe.java/wrk/jdk-11/modules/",
+				MetaReports.toWorkspaceReference(modulesPath));
+	}
+
+	@Test
+	public void testModulesOutsideBndWorkspaceAreReferencedAbsolute() {
+		Path modulesPath = tempDir.resolve("wrk").resolve("modules");
+
+		assertEquals(modulesPath.toString() + "/", MetaReports.toWorkspaceReference(modulesPath));
+	}
+}
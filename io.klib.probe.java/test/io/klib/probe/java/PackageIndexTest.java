@@ -0,0 +1,82 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.lang.module.ModuleDescriptor;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PackageIndexTest {
+
+	@Test
+	public void testExportedAndPrivatePackages() {
+		Map<String, ModuleDescriptor> descriptors = new LinkedHashMap<>();
+		descriptors.put("java.base",
+				ModuleDescriptor.newModule("java.base").packages(Set.of("java.lang", "java.util", "sun.nio.ch"))
+						.exports("java.util").exports("java.lang").exports(Set.of(), "sun.nio.ch", Set.of("jdk.net"))
+						.build());
+		descriptors.put("jdk.net", ModuleDescriptor.newModule("jdk.net").requires("java.base")
+				.packages(Set.of("jdk.net", "jdk.internal.net")).exports("jdk.net").build());
+
+		PackageIndex index = PackageIndex.of(descriptors);
+
+		assertEquals(5, index.size());
+		assertTrue(index.isExported("java.lang"));
+		assertTrue(index.isExported("java.base", "java.util"));
+		assertFalse(index.isExported("jdk.net", "java.util"));
+		// qualified exports are private for the ee.j2se bundle
+		assertFalse(index.isExported("sun.nio.ch"));
+		assertTrue(index.contains("sun.nio.ch"));
+		assertFalse(index.contains("java.awt"));
+		assertEquals("jdk.net", index.getModule("jdk.internal.net"));
+		assertNull(index.getModule("java.awt"));
+		assertEquals(Arrays.asList("java.lang", "java.util"), index.getMapModuleExportedPackages().get("java.base"));
+		assertEquals(Arrays.asList("sun.nio.ch"), index.getMapModuleNonExportedPackages().get("java.base"));
+		assertEquals(Arrays.asList("java.lang", "java.util", "jdk.net"), index.getAllExportedPackages());
+		assertEquals(Arrays.asList("jdk.internal.net", "sun.nio.ch"), index.getAllNonExportedPackages());
+	}
+
+	@Test
+	public void testLookupsOfLargeIndex() {
+		// lookup cost by package count is measured by PackageIndexBenchmark
+		int packageCount = 100_000;
+		int modules = 50;
+		PackageIndex index = PackageIndex.of(descriptors(packageCount, modules));
+
+		assertEquals(packageCount, index.size());
+		for (int p = 0; p < packageCount; p++) {
+			String packageName = packageName(p % modules, p);
+			assertEquals(packageName, "m" + p % modules, index.getModule(packageName));
+			assertEquals(packageName, p % 3 == 0, index.isExported(index.getModule(packageName), packageName));
+		}
+		assertNull(index.getModule(packageName(0, packageCount)));
+	}
+
+	/**
+	 * @return descriptors of modules sharing the packages round robin, every
+	 *         third package is exported
+	 */
+	private static Map<String, ModuleDescriptor> descriptors(int packageCount, int modules) {
+		Map<String, ModuleDescriptor> descriptors = new LinkedHashMap<>();
+		for (int m = 0; m < modules; m++) {
+			ModuleDescriptor.Builder builder = ModuleDescriptor.newModule("m" + m);
+			for (int p = m; p < packageCount; p += modules) {
+				String packageName = packageName(m, p);
+				builder.packages(Set.of(packageName));
+				if (p % 3 == 0) {
+					builder.exports(packageName);
+				}
+			}
+			descriptors.put("m" + m, builder.build());
+		}
+		return descriptors;
+	}
+
+	private static String packageName(int module, int pkg) {
+		return "org.example.m" + module + ".p" + pkg;
+	}
+}
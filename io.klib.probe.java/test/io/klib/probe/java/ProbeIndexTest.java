@@ -0,0 +1,108 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ProbeIndexTest {
+
+	private static final Map<String, Map<String, List<String>>> IMAGE = Map.of(
+			"java.base", Map.of("", List.of("module-info.class"),
+					"java/lang", List.of("Object.class", "String.class"),
+					"java/util", List.of("Map.class", "Map$Entry.class"),
+					"sun/nio/ch", List.of("Net.class")),
+			"java.sql", Map.of("", List.of("module-info.class"),
+					"java/sql", List.of("Connection.class", "sql.properties")));
+
+	private static JreImage image() {
+		return new JreImage() {
+			@Override
+			public List<String> getModules() {
+				return Arrays.asList("java.base", "java.sql");
+			}
+
+			@Override
+			public Map<String, List<String>> getPackageDirs(String module) {
+				return IMAGE.get(module);
+			}
+
+			@Override
+			public ByteBuffer read(String module, String path) throws IOException {
+				throw new IOException("not needed by the index");
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	private static PackageIndex packageIndex() {
+		Map<String, ModuleDescriptor> descriptors = new LinkedHashMap<>();
+		descriptors.put("java.base", ModuleDescriptor.newModule("java.base")
+				.packages(Set.of("java.lang", "java.util", "sun.nio.ch")).exports("java.lang").exports("java.util")
+				.build());
+		descriptors.put("java.sql",
+				ModuleDescriptor.newModule("java.sql").requires("java.base").exports("java.sql").build());
+		return PackageIndex.of(descriptors);
+	}
+
+	private static Path writeIndex() throws IOException {
+		Path indexFile = Files.createTempFile("probe", ".index");
+		try (OutputStream out = Files.newOutputStream(indexFile)) {
+			ProbeIndex.write(out, "11.0.3", packageIndex(), image());
+		}
+		return indexFile;
+	}
+
+	@Test
+	public void testLookups() throws IOException {
+		Path indexFile = writeIndex();
+		try (ProbeIndex index = ProbeIndex.open(indexFile)) {
+			assertEquals("11.0.3", index.getJreVersion());
+			assertEquals(Arrays.asList("java.base", "java.sql"), index.getModules());
+			assertEquals(4, index.getPackageCount());
+			assertEquals(6, index.getClassCount());
+
+			assertTrue(index.containsModule("java.sql"));
+			assertFalse(index.containsModule("java.desktop"));
+			assertEquals(Optional.of("java.sql"), index.getExportingModule("java.sql"));
+			assertEquals(Optional.empty(), index.getExportingModule("sun.nio.ch"));
+			assertEquals(Optional.of("java.base"), index.getModuleOfPackage("sun.nio.ch"));
+			assertFalse(index.isPackageExported("javax.swing"));
+
+			assertTrue(index.isClassExported("java.util.Map$Entry"));
+			assertTrue(index.isClassExported("java/sql/Connection"));
+			assertFalse(index.isClassExported("sun.nio.ch.Net"));
+			assertEquals(Optional.of("java.base"), index.getModuleOfClass("sun.nio.ch.Net"));
+			assertEquals(Optional.empty(), index.getModuleOfClass("module-info"));
+			assertEquals(Optional.empty(), index.getModuleOfClass("java.util.Maps"));
+		} finally {
+			Files.delete(indexFile);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsOtherFiles() throws IOException {
+		Path file = Files.createTempFile("probe", ".txt");
+		try {
+			Files.write(file, new byte[64]);
+			ProbeIndex.open(file).close();
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.klib.probe.java.ProbeMetrics.Counter;
+import io.klib.probe.java.ProbeMetrics.Phase;
+
+public class ProbeMetricsTest {
+
+	@Test
+	@SuppressWarnings("try")
+	public void testJsonContainsFinishedPhasesAndAllCounters() throws Exception {
+		ProbeMetrics metrics = new ProbeMetrics("jdk \"11\"");
+		try (ProbeMetrics.Timer timer = metrics.start(Phase.EXTRACT)) {
+			metrics.add(Counter.FILES, 3);
+		}
+		try (ProbeMetrics.Timer timer = metrics.start(Phase.REPORTS)) {
+			metrics.add(Counter.REPORTS, 1);
+		}
+		try (ProbeMetrics.Timer timer = metrics.start(Phase.REPORTS)) {
+			metrics.add(Counter.REPORTS, 1);
+		}
+		StringWriter out = new StringWriter();
+		metrics.writeJson(out, "11.0.3");
+
+		String json = out.toString();
+		assertTrue(json, json.contains("\"jre\": \"jdk \\\"11\\\"\""));
+		assertTrue(json, json.contains("\"version\": \"11.0.3\""));
+		assertTrue(json, json.contains("\"extract\": { \"millis\": "));
+		assertTrue(json, json.contains("\"count\": 2 }"));
+		assertFalse(json, json.contains("\"openImage\""));
+		assertTrue(json, json.contains("\"files\": 3"));
+		assertTrue(json, json.contains("\"reports\": 2"));
+		assertTrue(json, json.contains("\"stubbedClasses\": 0"));
+		assertEquals(2, metrics.getCount(Phase.REPORTS));
+		assertTrue(metrics.toSummary().startsWith("extract "));
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	public void testNestedPhasesAreDisjoint() throws Exception {
+		ProbeMetrics metrics = new ProbeMetrics("jdk");
+		long startNanos = System.nanoTime();
+		try (ProbeMetrics.Timer reports = metrics.start(Phase.REPORTS)) {
+			try (ProbeMetrics.Timer dependencies = metrics.start(Phase.DEPENDENCIES)) {
+				Thread.sleep(5);
+			}
+		}
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		assertTrue(metrics.getNanos(Phase.DEPENDENCIES) > 0);
+		assertTrue(metrics.getNanos(Phase.REPORTS) + metrics.getNanos(Phase.DEPENDENCIES) <= elapsedNanos);
+		assertEquals(1, metrics.getCount(Phase.REPORTS));
+	}
+
+	@Test
+	public void testProgressIsThrottled() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+		ProgressLine progress = new ProgressLine("extracted", () -> 42, () -> 0, out, false);
+		for (int i = 0; i < 10_000; i++) {
+			progress.update();
+		}
+		progress.finish();
+
+		assertEquals("", bytes.toString(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,208 @@
+package io.klib.probe.java;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Correctness of the export and private split on generated images, and time
+ * and heap budgets for large ones. The budgets are far above the linear cost,
+ * they only catch quadratic behaviour.
+ */
+public class ScaleTest {
+
+	private static final long LARGE_IMAGE_BUDGET_MILLIS = 20_000;
+	private static final long LARGE_IMAGE_HEAP_BUDGET_BYTES = 64L * 1024 * 1024;
+
+	private Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("probe-scale");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testExportSplitOfLargeImage() throws IOException {
+		// 300 modules, 6000 packages, 240000 classes
+		SyntheticJreImage image = new SyntheticJreImage(300, 20, 40, 0.4, 0.25, 0);
+		long usedBefore = usedHeap();
+		long startMillis = System.currentTimeMillis();
+
+		PackageIndex packageIndex = ModuleExportTable.read(image).getPackageIndex();
+		Map<String, List<String>> mapModule2Packages = new PackageScanner(0).scan(image);
+		MetaReports metaReports = new MetaReports(packageIndex, tempDir.resolve(JreProbe.TARGET_MODULES));
+		Writer out = Writer.nullWriter();
+		MetaReports.writeModules2Packages(out, mapModule2Packages);
+		metaReports.writeAllExportedPackages(out);
+		metaReports.writeModules2PrivatePackages(out);
+		metaReports.writeAllPrivatePackages(out);
+		metaReports.writeImportEeJ2se(out);
+		ProbeIndex.write(OutputStream.nullOutputStream(), SyntheticJreImage.VERSION, packageIndex, image);
+
+		long durationMillis = System.currentTimeMillis() - startMillis;
+		long retainedHeap = usedHeap() - usedBefore;
+		assertTrue("analysis took " + durationMillis + " ms", durationMillis < LARGE_IMAGE_BUDGET_MILLIS);
+		assertTrue("analysis retained " + retainedHeap + " bytes", retainedHeap < LARGE_IMAGE_HEAP_BUDGET_BYTES);
+		assertSplit(image, 300, 20, packageIndex);
+		assertEquals(300, mapModule2Packages.size());
+		assertEquals(20, mapModule2Packages.get(SyntheticJreImage.BASE_MODULE).size());
+		// keep the analysis reachable until the heap was measured
+		assertNotNull(metaReports);
+	}
+
+	@Test
+	public void testProbeOfExplodedImage() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(12, 8, 5, 0.5, 0.5, 0);
+		Path jreHome = tempDir.resolve("jre");
+		image.writeExploded(jreHome);
+		Path wrkPath = tempDir.resolve("wrk");
+		JreProbe.Options options = new JreProbe.Options(2, true, null, false, true, false, true, null);
+
+		JreProbe.Result result = new JreProbe("synthetic", jreHome, wrkPath, options).run();
+
+		assertNull(result.failure);
+		assertEquals(SyntheticJreImage.VERSION, result.version);
+		assertEquals(image.getExportedPackageCount(), result.exportedPackages);
+		assertEquals(image.getPrivatePackageCount(), result.privatePackages);
+		List<String> exportedDirs = new ArrayList<>();
+		for (int m = 0; m < 12; m++) {
+			for (int p = 0; p < 8; p++) {
+				Path exportDir = wrkPath.resolve(JreProbe.TARGET_PACKAGE_EXPORTS)
+						.resolve(image.packageName(m, p).replace('.', '/'));
+				if (image.isExported(p)) {
+					exportedDirs.add(image.packageName(m, p));
+					try (Stream<Path> files = Files.list(exportDir)) {
+						assertEquals(5, files.count());
+					}
+				} else {
+					assertFalse(exportDir.toString(), Files.exists(exportDir));
+				}
+			}
+		}
+		assertEquals(exportedDirs.stream().sorted().collect(Collectors.toList()),
+				Files.readAllLines(wrkPath.resolve(JreProbe.META_DIR).resolve(MetaReports.ALL_EXPORTED_PACKAGES))
+						.stream().filter(l -> l.startsWith("    ")).map(String::trim).collect(Collectors.toList()));
+		try (ProbeIndex index = ProbeIndex.open(wrkPath.resolve(JreProbe.META_DIR).resolve(ProbeIndex.FILE_NAME))) {
+			assertTrue(index.isClassExported(image.className(3, 0, 4)));
+			assertFalse(index.isClassExported(image.className(3, 7, 4)));
+		}
+
+		// a changed class file of the exploded image is extracted again
+		Path changedClass = jreHome.resolve(JreProbe.EXPLODED_MODULES_DIR).resolve(SyntheticJreImage.moduleName(3))
+				.resolve(image.className(3, 0, 4) + ".class");
+		Files.write(changedClass, Files.readAllBytes(changedClass));
+		Files.setLastModifiedTime(changedClass,
+				FileTime.fromMillis(Files.getLastModifiedTime(changedClass).toMillis() + 2000));
+		JreProbe rerun = new JreProbe("synthetic", jreHome, wrkPath, options);
+		rerun.run();
+		assertTrue(rerun.getMetrics().get(ProbeMetrics.Counter.FILES) > 0);
+	}
+
+	@Test
+	public void testVersionOfJreWithoutReleaseFile() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(2, 2, 2, 0.5, 0);
+		Path jreHome = tempDir.resolve("jre");
+		image.writeExploded(jreHome);
+		Files.delete(jreHome.resolve("release"));
+		JreProbe.Options options = new JreProbe.Options(2, true, null, false, true, false, false, null);
+
+		JreProbe.Result result = new JreProbe("synthetic", jreHome, tempDir.resolve("wrk"), options).run();
+
+		assertNull(result.failure);
+		assertEquals(SyntheticJreImage.VERSION, result.version);
+	}
+
+	@Test
+	public void testPackagesNoLongerExportedKeepModuleTree() throws IOException {
+		SyntheticJreImage exporting = new SyntheticJreImage(3, 4, 2, 0.5, 0);
+		SyntheticJreImage hiding = new SyntheticJreImage(3, 4, 2, 0.25, 0);
+		exporting.writeExploded(tempDir.resolve("jre1"));
+		hiding.writeExploded(tempDir.resolve("jre2"));
+		Path wrkPath = tempDir.resolve("wrk");
+		JreProbe.Options options = new JreProbe.Options(2, true, null, false, true, false, false, null);
+		assertNull(new JreProbe("synthetic", tempDir.resolve("jre1"), wrkPath, options).run().failure);
+		long moduleFiles = countFiles(wrkPath.resolve(JreProbe.TARGET_MODULES));
+
+		// the same workspace probes a JRE which no longer exports package 1
+		assertNull(new JreProbe("synthetic", tempDir.resolve("jre2"), wrkPath, options).run().failure);
+
+		assertEquals(moduleFiles, countFiles(wrkPath.resolve(JreProbe.TARGET_MODULES)));
+		Path exportPath = wrkPath.resolve(JreProbe.TARGET_PACKAGE_EXPORTS);
+		for (int m = 0; m < 3; m++) {
+			String hiddenDir = hiding.packageName(m, 1).replace('.', '/');
+			assertTrue(Files.exists(exportPath.resolve(hiding.packageName(m, 0).replace('.', '/'))));
+			assertFalse(Files.exists(exportPath.resolve(hiddenDir).resolve("C00000.class")));
+			assertTrue(Files.exists(wrkPath.resolve(JreProbe.TARGET_MODULES).resolve(SyntheticJreImage.moduleName(m))
+					.resolve(hiddenDir).resolve("C00000.class")));
+		}
+	}
+
+	@Test
+	public void testDeletedTargetIsExtractedAgain() throws IOException {
+		SyntheticJreImage image = new SyntheticJreImage(2, 2, 2, 0.5, 0);
+		image.writeExploded(tempDir.resolve("jre"));
+		Path wrkPath = tempDir.resolve("wrk");
+		JreProbe.Options options = new JreProbe.Options(2, true, null, false, true, false, false, null);
+		assertNull(new JreProbe("synthetic", tempDir.resolve("jre"), wrkPath, options).run().failure);
+		long exportFiles = countFiles(wrkPath.resolve(JreProbe.TARGET_PACKAGE_EXPORTS));
+
+		try (Stream<Path> paths = Files.walk(wrkPath.resolve(JreProbe.TARGET_PACKAGE_EXPORTS))) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+		assertNull(new JreProbe("synthetic", tempDir.resolve("jre"), wrkPath, options).run().failure);
+
+		assertEquals(exportFiles, countFiles(wrkPath.resolve(JreProbe.TARGET_PACKAGE_EXPORTS)));
+	}
+
+	private static long countFiles(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			return paths.filter(Files::isRegularFile).count();
+		}
+	}
+
+	private static void assertSplit(SyntheticJreImage image, int modules, int packagesPerModule,
+			PackageIndex packageIndex) {
+		assertEquals(image.getExportedPackageCount(), packageIndex.getAllExportedPackages().size());
+		assertEquals(image.getPrivatePackageCount(), packageIndex.getAllNonExportedPackages().size());
+		assertEquals(image.getPackageCount(), packageIndex.size());
+		for (int m = 0; m < modules; m++) {
+			String module = SyntheticJreImage.moduleName(m);
+			for (int p = 0; p < packagesPerModule; p++) {
+				String packageName = image.packageName(m, p);
+				assertEquals(packageName, image.isExported(p), packageIndex.isExported(module, packageName));
+				assertEquals(packageName, image.isDuplicate(m, p) ? SyntheticJreImage.BASE_MODULE : module,
+						packageIndex.getModule(packageName));
+			}
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
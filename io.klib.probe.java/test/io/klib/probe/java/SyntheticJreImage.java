@@ -0,0 +1,385 @@
+package io.klib.probe.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generated {@link JreImage} of configurable size for benchmarks and scale
+ * tests. The first module is <code>java.base</code>, every module exports its
+ * first packages according to the export ratio and every package contains
+ * minimal class files. Duplicates are private packages of <code>java.base</code>
+ * repeated with identical class files in every other module. Content is
+ * created on demand and is deterministic, so large images need no memory
+ * besides their package directories. {@link #writeExploded(Path)} writes the
+ * image as exploded <code>modules</code> tree.
+ */
+final class SyntheticJreImage implements JreImage {
+
+	static final String BASE_MODULE = "java.base";
+	private static final String MODULE_PREFIX = "synthetic.m";
+	private static final String PACKAGE_PREFIX = "p";
+	private static final String CLASS_PREFIX = "C";
+	private static final String CLASS_SUFFIX = ".class";
+	private static final int CLASS_VERSION = 55;
+	private static final int ACC_SUPER = 0x0020;
+	private static final int ACC_MANDATED = 0x8000;
+	static final String VERSION = "11.0.0";
+
+	private final int moduleCount;
+	private final int packagesPerModule;
+	private final int classesPerPackage;
+	private final int exportedPerModule;
+	private final int duplicatesPerModule;
+	private final int classSize;
+	private final List<String> modules;
+	private final Map<String, Map<String, List<String>>> mapModulePackageDirs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param exportRatio share of the packages of every module which are
+	 *                    exported
+	 * @param classSize   minimal size of the class files in bytes, reached by
+	 *                    padding the constant pool
+	 */
+	SyntheticJreImage(int moduleCount, int packagesPerModule, int classesPerPackage, double exportRatio,
+			int classSize) {
+		this(moduleCount, packagesPerModule, classesPerPackage, exportRatio, 0d, classSize);
+	}
+
+	/**
+	 * @param duplicateRatio share of the private packages of every module
+	 *                       besides <code>java.base</code> which duplicate a
+	 *                       private package of <code>java.base</code>
+	 */
+	SyntheticJreImage(int moduleCount, int packagesPerModule, int classesPerPackage, double exportRatio,
+			double duplicateRatio, int classSize) {
+		this.moduleCount = Math.max(1, moduleCount);
+		this.packagesPerModule = Math.max(1, packagesPerModule);
+		this.classesPerPackage = Math.max(1, classesPerPackage);
+		this.exportedPerModule = (int) Math.round(this.packagesPerModule * Math.min(1d, Math.max(0d, exportRatio)));
+		this.duplicatesPerModule = (int) Math.round(
+				(this.packagesPerModule - exportedPerModule) * Math.min(1d, Math.max(0d, duplicateRatio)));
+		this.classSize = classSize;
+		List<String> names = new ArrayList<>(this.moduleCount);
+		for (int m = 0; m < this.moduleCount; m++) {
+			names.add(moduleName(m));
+		}
+		Collections.sort(names);
+		this.modules = Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * @return number of distinct packages
+	 */
+	int getPackageCount() {
+		return getExportedPackageCount() + getPrivatePackageCount();
+	}
+
+	int getExportedPackageCount() {
+		return moduleCount * exportedPerModule;
+	}
+
+	/**
+	 * @return number of distinct private packages, duplicates are counted once
+	 */
+	int getPrivatePackageCount() {
+		return moduleCount * (packagesPerModule - exportedPerModule) - (moduleCount - 1) * duplicatesPerModule;
+	}
+
+	/**
+	 * @return number of class files including the duplicates
+	 */
+	int getClassCount() {
+		return moduleCount * packagesPerModule * classesPerPackage;
+	}
+
+	/**
+	 * @return package name of the given module and package number
+	 */
+	String packageName(int module, int pkg) {
+		return JreImage.toPackageName(packageDir(module, pkg));
+	}
+
+	/**
+	 * @return internal name of the given class
+	 */
+	String className(int module, int pkg, int clazz) {
+		return packageDir(module, pkg) + "/" + className(clazz);
+	}
+
+	/**
+	 * @return whether the package with the given number duplicates the package
+	 *         of <code>java.base</code>
+	 */
+	boolean isDuplicate(int module, int pkg) {
+		return module > 0 && pkg >= exportedPerModule && pkg - exportedPerModule < duplicatesPerModule;
+	}
+
+	/**
+	 * writes the <code>release</code> file and the exploded
+	 * <code>modules/&lt;module&gt;/&lt;package&gt;/*.class</code> tree, modules
+	 * in parallel
+	 */
+	void writeExploded(Path jreHome) throws IOException {
+		Files.createDirectories(jreHome);
+		Files.writeString(jreHome.resolve("release"), "JAVA_VERSION=\"" + VERSION + "\"\n",
+				StandardCharsets.ISO_8859_1);
+		Path modulesDir = jreHome.resolve(JreProbe.EXPLODED_MODULES_DIR);
+		try {
+			modules.parallelStream().forEach(module -> {
+				try {
+					for (Map.Entry<String, List<String>> packageDir : getPackageDirs(module).entrySet()) {
+						Path dir = Files.createDirectories(modulesDir.resolve(module).resolve(packageDir.getKey()));
+						for (String fileName : packageDir.getValue()) {
+							ByteBuffer content = read(module, JreImage.toPath(packageDir.getKey(), fileName));
+							byte[] bytes = new byte[content.remaining()];
+							content.get(bytes);
+							Files.write(dir.resolve(fileName), bytes);
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * @return whether the package with the given number is exported
+	 */
+	boolean isExported(int pkg) {
+		return pkg < exportedPerModule;
+	}
+
+	@Override
+	public List<String> getModules() {
+		return modules;
+	}
+
+	@Override
+	public Map<String, List<String>> getPackageDirs(String module) throws IOException {
+		int m = moduleNumber(module);
+		return mapModulePackageDirs.computeIfAbsent(module, k -> {
+			List<String> classes = new ArrayList<>(classesPerPackage);
+			for (int c = 0; c < classesPerPackage; c++) {
+				classes.add(className(c) + CLASS_SUFFIX);
+			}
+			List<String> sharedClasses = Collections.unmodifiableList(classes);
+			Map<String, List<String>> mapPackageDirs = new LinkedHashMap<>();
+			mapPackageDirs.put("", Collections.singletonList(MODULE_INFO));
+			for (int p = 0; p < packagesPerModule; p++) {
+				mapPackageDirs.put(packageDir(m, p), sharedClasses);
+			}
+			return Collections.unmodifiableMap(mapPackageDirs);
+		});
+	}
+
+	@Override
+	public ByteBuffer read(String module, String path) throws IOException {
+		int m = moduleNumber(module);
+		if (path.equals(MODULE_INFO)) {
+			return ByteBuffer.wrap(moduleInfo(m)).asReadOnlyBuffer();
+		}
+		int slash = path.lastIndexOf('/');
+		String packageDir = slash < 0 ? "" : path.substring(0, slash);
+		String fileName = path.substring(slash + 1);
+		List<String> files = getPackageDirs(module).get(packageDir);
+		if (files == null || !files.contains(fileName) || !fileName.endsWith(CLASS_SUFFIX)) {
+			throw new IOException("no resource " + path + " in synthetic module " + module);
+		}
+		int c = Integer.parseInt(fileName.substring(CLASS_PREFIX.length(), fileName.length() - CLASS_SUFFIX.length()));
+		int p = Integer.parseInt(packageDir.substring(packageDir.lastIndexOf('/') + 1 + PACKAGE_PREFIX.length()));
+		return ByteBuffer.wrap(classFile(m, p, c)).asReadOnlyBuffer();
+	}
+
+	@Override
+	public void close() {
+	}
+
+	static String moduleName(int module) {
+		return module == 0 ? BASE_MODULE : String.format("%s%04d", MODULE_PREFIX, module);
+	}
+
+	private int moduleNumber(String module) throws IOException {
+		if (module.equals(BASE_MODULE)) {
+			return 0;
+		}
+		try {
+			int m = Integer.parseInt(module.substring(MODULE_PREFIX.length()));
+			if (module.startsWith(MODULE_PREFIX) && m > 0 && m < moduleCount) {
+				return m;
+			}
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			// reported below
+		}
+		throw new IOException("no synthetic module " + module);
+	}
+
+	private String packageDir(int module, int pkg) {
+		return String.format("synthetic/m%04d/%s%04d", isDuplicate(module, pkg) ? 0 : module, PACKAGE_PREFIX, pkg);
+	}
+
+	private static String className(int clazz) {
+		return String.format("%s%05d", CLASS_PREFIX, clazz);
+	}
+
+	/**
+	 * module descriptor requiring <code>java.base</code> and exporting the
+	 * first packages, only <code>java.base</code> has a version
+	 */
+	private byte[] moduleInfo(int module) {
+		ConstantPool cp = new ConstantPool();
+		int thisClass = cp.classRef("module-info");
+		int moduleAttribute = cp.utf8("Module");
+		int moduleName = cp.add(ClassFileReader.CONSTANT_MODULE, cp.utf8(moduleName(module)));
+		int baseModule = cp.add(ClassFileReader.CONSTANT_MODULE, cp.utf8(BASE_MODULE));
+		int moduleVersion = module == 0 ? cp.utf8(VERSION + "+1") : 0;
+		int[] exports = new int[exportedPerModule];
+		for (int p = 0; p < exportedPerModule; p++) {
+			exports[p] = cp.add(ClassFileReader.CONSTANT_PACKAGE, cp.utf8(packageDir(module, p)));
+		}
+		return cp.toClassFile(ClassFileReader.ACC_MODULE, thisClass, 0, fieldsAndMethods -> {
+			fieldsAndMethods.writeShort(0);
+			fieldsAndMethods.writeShort(0);
+			fieldsAndMethods.writeShort(1);
+			fieldsAndMethods.writeShort(moduleAttribute);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream attribute = new DataOutputStream(bytes);
+			attribute.writeShort(moduleName);
+			attribute.writeShort(0);
+			attribute.writeShort(moduleVersion);
+			if (module == 0) {
+				attribute.writeShort(0);
+			} else {
+				attribute.writeShort(1);
+				attribute.writeShort(baseModule);
+				attribute.writeShort(ACC_MANDATED);
+				attribute.writeShort(0);
+			}
+			attribute.writeShort(exports.length);
+			for (int export : exports) {
+				attribute.writeShort(export);
+				attribute.writeShort(0);
+				attribute.writeShort(0);
+			}
+			attribute.writeShort(0); // opens
+			attribute.writeShort(0); // uses
+			attribute.writeShort(0); // provides
+			fieldsAndMethods.writeInt(bytes.size());
+			bytes.writeTo(fieldsAndMethods);
+		});
+	}
+
+	/**
+	 * public class with a public field typed by a class of the previous
+	 * package, padded to the configured class size
+	 */
+	private byte[] classFile(int module, int pkg, int clazz) {
+		if (isDuplicate(module, pkg)) {
+			return classFile(0, pkg, clazz);
+		}
+		ConstantPool cp = new ConstantPool();
+		String name = className(module, pkg, clazz);
+		int thisClass = cp.classRef(name);
+		int superClass = cp.classRef("java/lang/Object");
+		String referenced = packageDir(pkg > 0 ? module : Math.max(0, module - 1), Math.max(0, pkg - 1)) + "/"
+				+ className(0);
+		cp.classRef(referenced);
+		int fieldName = cp.utf8("ref");
+		int fieldDescriptor = cp.utf8("L" + referenced + ";");
+		int padding = classSize - cp.size() - 64;
+		if (padding > 0) {
+			cp.utf8("x".repeat(Math.min(padding, 0xFFFF)));
+		}
+		return cp.toClassFile(ClassFileReader.ACC_PUBLIC | ACC_SUPER, thisClass, superClass, members -> {
+			members.writeShort(1);
+			members.writeShort(ClassFileReader.ACC_PUBLIC);
+			members.writeShort(fieldName);
+			members.writeShort(fieldDescriptor);
+			members.writeShort(0);
+			members.writeShort(0);
+			members.writeShort(0);
+		});
+	}
+
+	@FunctionalInterface
+	private interface Body {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * constant pool of Utf8, Class, Module and Package entries
+	 */
+	private static final class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> mapUtf8 = new LinkedHashMap<>();
+		private int count = 1;
+
+		int utf8(String value) {
+			return mapUtf8.computeIfAbsent(value, v -> {
+				try {
+					out.writeByte(ClassFileReader.CONSTANT_UTF8);
+					out.writeUTF(v);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return count++;
+			});
+		}
+
+		int classRef(String internalName) {
+			return add(ClassFileReader.CONSTANT_CLASS, utf8(internalName));
+		}
+
+		int add(int tag, int nameIndex) {
+			try {
+				out.writeByte(tag);
+				out.writeShort(nameIndex);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return count++;
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		/**
+		 * @param body fields, methods and attributes following the interfaces
+		 */
+		byte[] toClassFile(int access, int thisClass, int superClass, Body body) {
+			try {
+				ByteArrayOutputStream classBytes = new ByteArrayOutputStream(bytes.size() + 64);
+				DataOutputStream classOut = new DataOutputStream(classBytes);
+				classOut.writeInt(ClassFileReader.MAGIC);
+				classOut.writeShort(0);
+				classOut.writeShort(CLASS_VERSION);
+				classOut.writeShort(count);
+				bytes.writeTo(classOut);
+				classOut.writeShort(access);
+				classOut.writeShort(thisClass);
+				classOut.writeShort(superClass);
+				classOut.writeShort(0);
+				body.write(classOut);
+				return classBytes.toByteArray();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}